@@ -0,0 +1,225 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.batch.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchResponse;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Packs a stream of operations, each tagged with its partition key, into transactional batches.
+ * <p>
+ * The operations are spread over one lane per unit of pipeline depth by the hash of their partition key, so all
+ * operations of a partition key share a lane. Each lane is cut into chunks (a maximum number of operations, or
+ * whatever arrived within a time window), and within a chunk the operations of each partition key are packed in
+ * arrival order into as few {@link CosmosBatch}es as the limits allow: at most 100 operations, and an estimated
+ * request size below 2 MB, estimated from the serialized items. A lane runs its batches one after the other, so the
+ * operations of a partition key are applied in the order they arrived, while the lanes run concurrently and
+ * independently: a slow batch only holds back the partition keys of its own lane.
+ * <p>
+ * Each batch is atomic on its own. A failed batch does not stop later batches of the same partition key; callers
+ * that need that must inspect the responses. An operation that is too large for any batch is never sent: it is
+ * handed to the rejection handler with an {@link IllegalArgumentException}, and the other operations, of its
+ * partition key included, carry on.
+ */
+public class PartitionKeyBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionKeyBatcher.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    // Service limits for one transactional batch
+    public static final int MAX_OPERATIONS_PER_BATCH = 100;
+    public static final int MAX_BATCH_BYTES = 2 * 1024 * 1024;
+    // Approximate per operation overhead in the batch request (operation type, id, headers)
+    private static final int OPERATION_OVERHEAD_BYTES = 200;
+
+    private final Function<CosmosBatch, Mono<CosmosBatchResponse>> executor;
+    private final int maxOperationsPerBatch;
+    private final int maxBatchBytes;
+    private final int chunkSize;
+    private final Duration chunkWindow;
+    private final int pipelineDepth;
+
+    /**
+     * @param chunkSize operations collected before they are packed into batches
+     * @param chunkWindow how long operations are collected at most before they are packed into batches
+     * @param pipelineDepth batches in flight at once, one per lane
+     */
+    public PartitionKeyBatcher(CosmosAsyncContainer container, int chunkSize, Duration chunkWindow, int pipelineDepth) {
+        this(container::executeCosmosBatch, MAX_OPERATIONS_PER_BATCH, MAX_BATCH_BYTES, chunkSize, chunkWindow, pipelineDepth);
+    }
+
+    /**
+     * @param executor runs one batch, for example with retries
+     * @param maxOperationsPerBatch operations per batch, at most {@link #MAX_OPERATIONS_PER_BATCH}
+     * @param maxBatchBytes estimated request size per batch, at most {@link #MAX_BATCH_BYTES}
+     */
+    public PartitionKeyBatcher(
+        Function<CosmosBatch, Mono<CosmosBatchResponse>> executor,
+        int maxOperationsPerBatch,
+        int maxBatchBytes,
+        int chunkSize,
+        Duration chunkWindow,
+        int pipelineDepth) {
+
+        this.executor = executor;
+        this.maxOperationsPerBatch = Math.min(maxOperationsPerBatch, MAX_OPERATIONS_PER_BATCH);
+        this.maxBatchBytes = Math.min(maxBatchBytes, MAX_BATCH_BYTES);
+        this.chunkSize = chunkSize;
+        this.chunkWindow = chunkWindow;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Executes the operations, emitting the response of every batch; operations too large for a batch are logged
+     * and skipped.
+     */
+    public Flux<CosmosBatchResponse> execute(Flux<BatchOperation> operations) {
+        return execute(operations, (operation, error) -> logger.warn("Skipping operation for partition key {}: {}",
+            operation.partitionKey, error.getMessage()));
+    }
+
+    /**
+     * Executes the operations, emitting the response of every batch.
+     *
+     * @param onRejected called with every operation that is too large for a batch, instead of sending it
+     */
+    public Flux<CosmosBatchResponse> execute(
+        Flux<BatchOperation> operations,
+        BiConsumer<BatchOperation, IllegalArgumentException> onRejected) {
+
+        // <PartitionKeyBatching>
+        // A fixed number of lanes, so that flatMap subscribes to every group and groupBy never stalls
+        return operations
+            .filter(operation -> {
+                if (operation.estimatedBytes <= maxBatchBytes) {
+                    return true;
+                }
+                onRejected.accept(operation, new IllegalArgumentException("Operation of about "
+                    + operation.estimatedBytes + " bytes does not fit into a batch of " + maxBatchBytes + " bytes."));
+                return false;
+            })
+            .groupBy(operation -> Math.floorMod(operation.partitionKey.toString().hashCode(), pipelineDepth))
+            .flatMap(lane -> lane
+                // Fair backpressure holds the chunks back while the lane is busy instead of overflowing
+                .bufferTimeout(chunkSize, chunkWindow, true)
+                .concatMapIterable(chunk -> {
+                    List<CosmosBatch> batches = new ArrayList<>();
+                    pack(chunk).values().forEach(batches::addAll);
+                    return batches;
+                })
+                .concatMap(executor), pipelineDepth);
+        // </PartitionKeyBatching>
+    }
+
+    /**
+     * Packs the operations of one chunk into batches per partition key, keeping their order. Every operation must
+     * fit into a batch on its own.
+     */
+    Map<String, List<CosmosBatch>> pack(List<BatchOperation> chunk) {
+        // Keyed by the JSON form of the partition key, as PartitionKey does not implement hashCode consistently
+        Map<String, List<CosmosBatch>> batchesByKey = new LinkedHashMap<>();
+        Map<String, Integer> currentBytes = new LinkedHashMap<>();
+        for (BatchOperation operation : chunk) {
+            String key = operation.partitionKey.toString();
+            List<CosmosBatch> batches = batchesByKey.computeIfAbsent(key, k -> new ArrayList<>());
+            CosmosBatch current = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+            int bytes = currentBytes.getOrDefault(key, 0);
+            if (current == null
+                || current.getOperations().size() >= maxOperationsPerBatch
+                || bytes + operation.estimatedBytes > maxBatchBytes) {
+                current = CosmosBatch.createCosmosBatch(operation.partitionKey);
+                batches.add(current);
+                bytes = 0;
+            }
+            operation.addTo.accept(current);
+            currentBytes.put(key, bytes + operation.estimatedBytes);
+        }
+        return batchesByKey;
+    }
+
+    private static int estimateBytes(Object item) {
+        if (item == null) {
+            return OPERATION_OVERHEAD_BYTES;
+        }
+        try {
+            return OPERATION_OVERHEAD_BYTES + OBJECT_MAPPER.writeValueAsString(item).getBytes(StandardCharsets.UTF_8).length;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Item cannot be serialized.", e);
+        }
+    }
+
+    /**
+     * One operation for {@link PartitionKeyBatcher}, with its partition key and estimated size.
+     */
+    public static final class BatchOperation {
+        private final PartitionKey partitionKey;
+        private final int estimatedBytes;
+        private final Consumer<CosmosBatch> addTo;
+
+        private BatchOperation(PartitionKey partitionKey, int estimatedBytes, Consumer<CosmosBatch> addTo) {
+            this.partitionKey = partitionKey;
+            this.estimatedBytes = estimatedBytes;
+            this.addTo = addTo;
+        }
+
+        public PartitionKey getPartitionKey() {
+            return partitionKey;
+        }
+
+        public int getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        public static <T> BatchOperation create(PartitionKey partitionKey, T item) {
+            return new BatchOperation(partitionKey, estimateBytes(item), batch -> batch.createItemOperation(item));
+        }
+
+        public static <T> BatchOperation upsert(PartitionKey partitionKey, T item) {
+            return new BatchOperation(partitionKey, estimateBytes(item), batch -> batch.upsertItemOperation(item));
+        }
+
+        public static <T> BatchOperation replace(PartitionKey partitionKey, String id, T item) {
+            return new BatchOperation(partitionKey, estimateBytes(item), batch -> batch.replaceItemOperation(id, item));
+        }
+
+        public static BatchOperation patch(PartitionKey partitionKey, String id, CosmosPatchOperations patch) {
+            // The patch operations are not serializable on their own; a patch is usually small
+            return new BatchOperation(partitionKey, OPERATION_OVERHEAD_BYTES * 2, batch -> batch.patchItemOperation(id, patch));
+        }
+
+        public static BatchOperation delete(PartitionKey partitionKey, String id) {
+            return new BatchOperation(partitionKey, OPERATION_OVERHEAD_BYTES, batch -> batch.deleteItemOperation(id));
+        }
+
+        public static BatchOperation read(PartitionKey partitionKey, String id) {
+            return new BatchOperation(partitionKey, OPERATION_OVERHEAD_BYTES, batch -> batch.readItemOperation(id));
+        }
+
+        /**
+         * Any other operation, for example one with request options, added to the batch by {@code addTo}.
+         */
+        public static BatchOperation of(PartitionKey partitionKey, int estimatedBytes, Consumer<CosmosBatch> addTo) {
+            return new BatchOperation(partitionKey, estimatedBytes, addTo);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.batch.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.implementation.RequestOptions;
+import com.azure.cosmos.implementation.batch.ItemBatchOperation;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosBatchOperationResult;
+import com.azure.cosmos.models.CosmosBatchPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosBatchResponse;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Executes transactional batches with retries on throttling, and reports the outcome of every operation.
+ * <p>
+ * A batch that is throttled (429) is retried as a whole after the retry-after duration the service asked for, or
+ * after an exponential backoff with jitter if that is longer. Any other failure rolls the batch back; the result
+ * names the operation that caused it, while the other operations report 424 (Failed Dependency). A failure without
+ * a batch response, such as a 429 after the last retry or a timeout, is reported with its status for every operation.
+ * <p>
+ * A batch rejected as too large (413) can optionally be split in halves, which are executed one after the other
+ * (and split again if needed). Each half is still atomic, but the batch as a whole no longer is: when the second half
+ * fails, the first one stays applied. Operations that were not executed because an earlier half failed report 424.
+ * When a batch is split, the if-match / if-none-match ETags and patch filter predicates of its operations are
+ * carried over; other per operation options are not.
+ */
+public class RetryingBatchExecutor {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+    private static final int FAILED_DEPENDENCY = 424;
+
+    private final CosmosAsyncContainer container;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final boolean splitWhenTooLarge;
+
+    /**
+     * @param maxRetries retries of a throttled batch before its 429 is reported
+     * @param minBackoff backoff before the first retry; it doubles per retry, with jitter, up to {@code maxBackoff}
+     * @param splitWhenTooLarge split a batch that is too large into halves, giving up atomicity of the whole batch
+     */
+    public RetryingBatchExecutor(
+        CosmosAsyncContainer container,
+        int maxRetries,
+        Duration minBackoff,
+        Duration maxBackoff,
+        boolean splitWhenTooLarge) {
+
+        this.container = container;
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        this.splitWhenTooLarge = splitWhenTooLarge;
+    }
+
+    public Mono<BatchResult> execute(CosmosBatch batch) {
+        return Mono.defer(() -> {
+            Statistics statistics = new Statistics();
+            return executeRange(batch.getPartitionKeyValue(), batch.getOperations(), batch, 0, statistics)
+                .map(results -> new BatchResult(results, statistics));
+        });
+    }
+
+    private Mono<List<OperationResult>> executeRange(
+        PartitionKey partitionKey, List<CosmosItemOperation> operations, CosmosBatch batch, int offset, Statistics statistics) {
+
+        return executeWithRetries(batch, 0, statistics)
+            // A failure without a batch response (throttling retries exhausted, timeouts) fails every operation
+            .onErrorResume(CosmosException.class, Mono::just)
+            .flatMap(response -> {
+                int statusCode = response instanceof CosmosException
+                    ? ((CosmosException) response).getStatusCode()
+                    : ((CosmosBatchResponse) response).getStatusCode();
+                boolean tooLarge = statusCode == REQUEST_ENTITY_TOO_LARGE;
+                if (tooLarge && splitWhenTooLarge && operations.size() > 1) {
+                    // <SplitBatch>
+                    statistics.splits.incrementAndGet();
+                    int half = operations.size() / 2;
+                    List<CosmosItemOperation> first = operations.subList(0, half);
+                    List<CosmosItemOperation> second = operations.subList(half, operations.size());
+                    return executeRange(partitionKey, first, copy(partitionKey, first), offset, statistics)
+                        .flatMap(firstResults -> {
+                            if (!allSucceeded(firstResults)) {
+                                return Mono.just(concat(firstResults, notExecuted(second, offset + half)));
+                            }
+                            return executeRange(partitionKey, second, copy(partitionKey, second), offset + half, statistics)
+                                .map(secondResults -> concat(firstResults, secondResults));
+                        });
+                    // </SplitBatch>
+                }
+                if (response instanceof CosmosException) {
+                    return Mono.just(failedWith(operations, offset, statusCode));
+                }
+                return Mono.just(toResults((CosmosBatchResponse) response, operations, offset));
+            });
+    }
+
+    private Mono<Object> executeWithRetries(CosmosBatch batch, int attempt, Statistics statistics) {
+        // <ThrottledBatchRetry>
+        return container
+            .executeCosmosBatch(batch)
+            .<Object>map(response -> response)
+            .onErrorResume(CosmosException.class, e -> e.getStatusCode() == TOO_MANY_REQUESTS
+                ? Mono.just(e)
+                : Mono.error(e))
+            .flatMap(outcome -> {
+                Duration retryAfter;
+                if (outcome instanceof CosmosException) {
+                    retryAfter = ((CosmosException) outcome).getRetryAfterDuration();
+                } else {
+                    CosmosBatchResponse response = (CosmosBatchResponse) outcome;
+                    statistics.requestCharge.add(response.getRequestCharge());
+                    if (response.getStatusCode() != TOO_MANY_REQUESTS) {
+                        return Mono.just(outcome);
+                    }
+                    retryAfter = response.getRetryAfterDuration();
+                }
+                if (attempt >= maxRetries) {
+                    return outcome instanceof CosmosException ? Mono.error((CosmosException) outcome) : Mono.just(outcome);
+                }
+                statistics.throttleRetries.incrementAndGet();
+                return Mono
+                    .delay(delay(attempt, retryAfter))
+                    .then(Mono.defer(() -> executeWithRetries(batch, attempt + 1, statistics)));
+            });
+        // </ThrottledBatchRetry>
+    }
+
+    private Duration delay(int attempt, Duration retryAfter) {
+        long backoff = Math.min(maxBackoff.toMillis(), minBackoff.toMillis() << Math.min(attempt, 20));
+        long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        long requested = retryAfter == null ? 0 : retryAfter.toMillis();
+        return Duration.ofMillis(Math.max(requested, jittered));
+    }
+
+    private static List<OperationResult> toResults(CosmosBatchResponse response, List<CosmosItemOperation> operations, int offset) {
+        List<CosmosBatchOperationResult> results = response.getResults();
+        if (results.size() != operations.size()) {
+            // No per operation results, for example when the request itself failed
+            return failedWith(operations, offset, response.getStatusCode());
+        }
+        List<OperationResult> operationResults = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            CosmosBatchOperationResult result = results.get(i);
+            operationResults.add(new OperationResult(offset + i, operations.get(i), result.getStatusCode(),
+                result.getRequestCharge(), result));
+        }
+        return operationResults;
+    }
+
+    private static List<OperationResult> failedWith(List<CosmosItemOperation> operations, int offset, int statusCode) {
+        List<OperationResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            results.add(new OperationResult(offset + i, operations.get(i), statusCode, 0, null));
+        }
+        return results;
+    }
+
+    private static List<OperationResult> notExecuted(List<CosmosItemOperation> operations, int offset) {
+        return failedWith(operations, offset, FAILED_DEPENDENCY);
+    }
+
+    private static boolean allSucceeded(List<OperationResult> results) {
+        for (OperationResult result : results) {
+            if (!result.isSuccessStatusCode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        List<T> all = new ArrayList<>(first.size() + second.size());
+        all.addAll(first);
+        all.addAll(second);
+        return all;
+    }
+
+    /**
+     * Builds a batch with the given operations, carrying over their conditions.
+     */
+    private static CosmosBatch copy(PartitionKey partitionKey, List<CosmosItemOperation> operations) {
+        CosmosBatch batch = CosmosBatch.createCosmosBatch(partitionKey);
+        for (CosmosItemOperation operation : operations) {
+            RequestOptions requestOptions = operation instanceof ItemBatchOperation
+                ? ((ItemBatchOperation<?>) operation).getRequestOptions()
+                : null;
+            CosmosBatchItemRequestOptions options = new CosmosBatchItemRequestOptions();
+            CosmosBatchPatchItemRequestOptions patchOptions = new CosmosBatchPatchItemRequestOptions();
+            if (requestOptions != null) {
+                options.setIfMatchETag(requestOptions.getIfMatchETag());
+                options.setIfNoneMatchETag(requestOptions.getIfNoneMatchETag());
+                patchOptions.setIfMatchETag(requestOptions.getIfMatchETag());
+                patchOptions.setIfNoneMatchETag(requestOptions.getIfNoneMatchETag());
+                patchOptions.setFilterPredicate(requestOptions.getFilterPredicate());
+            }
+
+            switch (operation.getOperationType()) {
+                case CREATE:
+                    batch.createItemOperation(operation.getItem(), options);
+                    break;
+                case UPSERT:
+                    batch.upsertItemOperation(operation.getItem(), options);
+                    break;
+                case REPLACE:
+                    batch.replaceItemOperation(operation.getId(), operation.getItem(), options);
+                    break;
+                case DELETE:
+                    batch.deleteItemOperation(operation.getId(), options);
+                    break;
+                case READ:
+                    batch.readItemOperation(operation.getId(), options);
+                    break;
+                case PATCH:
+                    batch.patchItemOperation(operation.getId(), (CosmosPatchOperations) operation.getItem(), patchOptions);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported operation type " + operation.getOperationType());
+            }
+        }
+        return batch;
+    }
+
+    private static final class Statistics {
+        private final AtomicInteger throttleRetries = new AtomicInteger();
+        private final AtomicInteger splits = new AtomicInteger();
+        private final DoubleAdder requestCharge = new DoubleAdder();
+    }
+
+    /**
+     * Outcome of one operation of a batch.
+     */
+    public static final class OperationResult {
+        private final int index;
+        private final CosmosItemOperation operation;
+        private final int statusCode;
+        private final double requestCharge;
+        private final CosmosBatchOperationResult result;
+
+        private OperationResult(int index, CosmosItemOperation operation, int statusCode, double requestCharge,
+                                CosmosBatchOperationResult result) {
+            this.index = index;
+            this.operation = operation;
+            this.statusCode = statusCode;
+            this.requestCharge = requestCharge;
+            this.result = result;
+        }
+
+        /**
+         * Position of the operation in the batch that was submitted.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public CosmosItemOperation getOperation() {
+            return operation;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public double getRequestCharge() {
+            return requestCharge;
+        }
+
+        public boolean isSuccessStatusCode() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        /**
+         * The result returned by the service, or null when the operation was not executed.
+         */
+        public CosmosBatchOperationResult getResult() {
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + operation.getOperationType() + " " + operation.getId() + ": " + statusCode;
+        }
+    }
+
+    /**
+     * Outcome of a batch, with one {@link OperationResult} per submitted operation.
+     */
+    public static final class BatchResult {
+        private final List<OperationResult> results;
+        private final int throttleRetries;
+        private final int splits;
+        private final double requestCharge;
+
+        private BatchResult(List<OperationResult> results, Statistics statistics) {
+            this.results = Collections.unmodifiableList(results);
+            this.throttleRetries = statistics.throttleRetries.get();
+            this.splits = statistics.splits.get();
+            this.requestCharge = statistics.requestCharge.sum();
+        }
+
+        public boolean isSuccessStatusCode() {
+            return getFailingIndex() < 0;
+        }
+
+        /**
+         * Index of the operation that caused the batch to fail, or -1 when it succeeded. When the batch as a whole
+         * failed (for example after exhausting its throttling retries) this is the first operation.
+         */
+        public int getFailingIndex() {
+            for (OperationResult result : results) {
+                if (!result.isSuccessStatusCode() && result.getStatusCode() != FAILED_DEPENDENCY) {
+                    return result.getIndex();
+                }
+            }
+            for (OperationResult result : results) {
+                if (!result.isSuccessStatusCode()) {
+                    return result.getIndex();
+                }
+            }
+            return -1;
+        }
+
+        public List<OperationResult> getResults() {
+            return results;
+        }
+
+        public int getThrottleRetries() {
+            return throttleRetries;
+        }
+
+        public int getSplits() {
+            return splits;
+        }
+
+        /**
+         * Request charge of all attempts, including throttled ones.
+         */
+        public double getRequestCharge() {
+            return requestCharge;
+        }
+    }
+}
@@ -11,9 +11,12 @@ import com.azure.cosmos.models.*;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
 
 public class SampleBatchQuickStartAsync {
     private static Logger logger = LoggerFactory.getLogger(SampleBatchQuickStartAsync.class);
@@ -87,6 +90,8 @@ public class SampleBatchQuickStartAsync {
         batchOfCreateOperationsThatFail.createItemOperation(andersenFamily);
         //executing the batch of operations
         executeBatchOperations(batchOfCreateOperationsThatFail);
+        //executing the same batch with retries on throttling, reporting the result of every operation
+        executeBatchOperationsWithRetries(batchOfCreateOperationsThatFail);
 
         logger.info("A batch of create and replace operations that succeeds.");
         CosmosBatch batchOfCreateAndReplaceOperations = CosmosBatch.createCosmosBatch(new PartitionKey(andersenFamily.getLastName()));
@@ -127,6 +132,9 @@ public class SampleBatchQuickStartAsync {
         batchOfUpsertAndDeleteOperations.deleteItemOperation(andersenFamily.getId());
         //executing the batch of operations
         executeBatchOperations(batchOfUpsertAndDeleteOperations);
+
+        logger.info("A stream of operations grouped into batches by partition key.");
+        executeBatchesByPartitionKey();
     }
 
     private void createDatabaseIfNotExists() throws Exception {
@@ -199,6 +207,23 @@ public class SampleBatchQuickStartAsync {
         }).block();
     }
 
+    private void executeBatchOperationsWithRetries(CosmosBatch batch) {
+        RetryingBatchExecutor executor = new RetryingBatchExecutor(container, 10, Duration.ofMillis(100),
+                Duration.ofSeconds(5), false);
+        RetryingBatchExecutor.BatchResult result = executor.execute(batch).block();
+        if (result.isSuccessStatusCode()) {
+            logger.info("The batch of operations succeeded after {} throttling retries for {} RU.",
+                    result.getThrottleRetries(), result.getRequestCharge());
+        } else {
+            //The failing index names the operation that caused the rollback; all others report 424 (Failed Dependency)
+            RetryingBatchExecutor.OperationResult failed = result.getResults().get(result.getFailingIndex());
+            logger.info("The batch of operations failed at operation {} ({} of item [{}]) with status code [{}], "
+                            + "after {} throttling retries for {} RU.",
+                    failed.getIndex(), failed.getOperation().getOperationType(), failed.getOperation().getId(),
+                    failed.getStatusCode(), result.getThrottleRetries(), result.getRequestCharge());
+        }
+    }
+
     private void executeBatchOperationsWithRead(CosmosBatch batch) {
         container.executeCosmosBatch(batch).map(cosmosBatchResponse -> {
             //Examining if the batch of operations is successful
@@ -226,6 +251,34 @@ public class SampleBatchQuickStartAsync {
     }
 
 
+    private void executeBatchesByPartitionKey() {
+        //Operations for several families arrive interleaved; the batcher packs them into one batch per last name
+        //(or more, when a batch would exceed the service limits) and runs the batches of different last names concurrently
+        List<PartitionKeyBatcher.BatchOperation> operations = new ArrayList<>();
+        List<Family> families = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Family family = i % 2 == 0 ? Families.getAndersenFamilyItem() : Families.getWakefieldFamilyItem();
+            //ids of the sample families are based on the current time, so they are made unique here
+            family.setId(family.getLastName() + "-" + i);
+            families.add(family);
+            operations.add(PartitionKeyBatcher.BatchOperation.create(new PartitionKey(family.getLastName()), family));
+        }
+        for (Family family : families) {
+            operations.add(PartitionKeyBatcher.BatchOperation.patch(new PartitionKey(family.getLastName()), family.getId(),
+                    CosmosPatchOperations.create().set("/registered", true)));
+        }
+
+        PartitionKeyBatcher batcher = new PartitionKeyBatcher(container, 1000, Duration.ofMillis(100), 4);
+        batcher.execute(Flux.fromIterable(operations))
+                .doOnNext(cosmosBatchResponse -> logger.info("Batch of {} operation(s) completed with status code {} for {} RU",
+                        cosmosBatchResponse.size(), cosmosBatchResponse.getStatusCode(), cosmosBatchResponse.getRequestCharge()))
+                .blockLast();
+
+        for (Family family : families) {
+            deleteItem(family);
+        }
+    }
+
     private void deleteItem(Family item) {
         container.deleteItem(item.getId(), new PartitionKey(item.getLastName())).block();
     }
@@ -0,0 +1,150 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.bulk.async;
+
+import com.azure.cosmos.BridgeInternal;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.ImplementationBridgeHelpers;
+import com.azure.cosmos.implementation.Undefined;
+import com.azure.cosmos.implementation.feedranges.FeedRangeEpkImpl;
+import com.azure.cosmos.implementation.routing.PartitionKeyInternal;
+import com.azure.cosmos.implementation.routing.PartitionKeyInternalHelper;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.GroupedFlux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Buckets item operations by the physical partition (feed range) that owns their partition key, without a service
+ * call per operation.
+ * <p>
+ * The effective partition key (EPK) of a key is computed locally from the container's partition key definition: the
+ * MurmurHash3 based hash of hash partitioning V1 and V2 for single path keys, and the concatenated per component
+ * hashes for hierarchical (MULTI_HASH) keys, the same computation the SDK uses to route requests. The physical feed
+ * ranges are read with {@code getFeedRanges()} and cached, sorted by their lower bound, so an EPK is mapped to its
+ * range by binary search. The cache is refreshed after {@code feedRangeRefreshInterval}; after a partition split the
+ * buckets of a stale copy are still valid sets of keys, only coarser, and the SDK routes every request correctly
+ * either way.
+ * <p>
+ * The EPK computation relies on internal SDK helpers, which are not part of the public API and may change between
+ * SDK versions; {@link #verify(PartitionKey)} checks a key against the SDK's own routing of
+ * {@link FeedRange#forLogicalPartition(PartitionKey)}.
+ */
+public class FeedRangeBucketer {
+    private static final Logger logger = LoggerFactory.getLogger(FeedRangeBucketer.class);
+
+    private final CosmosAsyncContainer container;
+    private final Mono<PartitionKeyDefinition> partitionKeyDefinition;
+    private final Mono<RangeTable> rangeTable;
+
+    /**
+     * @param feedRangeRefreshInterval how long the physical feed ranges are cached
+     */
+    public FeedRangeBucketer(CosmosAsyncContainer container, Duration feedRangeRefreshInterval) {
+        this.container = container;
+        this.partitionKeyDefinition = container.read()
+            .map(response -> response.getProperties().getPartitionKeyDefinition())
+            .cache();
+        this.rangeTable = Mono.zip(partitionKeyDefinition, container.getFeedRanges())
+            .map(definitionAndRanges -> new RangeTable(definitionAndRanges.getT1(), definitionAndRanges.getT2()))
+            .doOnNext(table -> logger.debug("Cached {} feed range(s)", table.feedRanges.length))
+            // Failures are not cached, the next call retries
+            .cache(table -> feedRangeRefreshInterval, error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * Effective partition key of {@code partitionKey} as a hex string, computed locally.
+     */
+    public static String getEffectivePartitionKey(PartitionKey partitionKey, PartitionKeyDefinition definition) {
+        PartitionKeyInternal partitionKeyInternal = BridgeInternal.getPartitionKeyInternal(partitionKey);
+        if (partitionKeyInternal == PartitionKeyInternal.None) {
+            // Items without a partition key value are stored under the undefined value of every path
+            partitionKeyInternal = PartitionKeyInternal.fromObjectArray(
+                Collections.nCopies(definition.getPaths().size(), (Object) Undefined.value()), false);
+        }
+        return PartitionKeyInternalHelper.getEffectivePartitionKeyString(partitionKeyInternal, definition);
+    }
+
+    /**
+     * Physical feed range owning {@code partitionKey}, from the cached feed ranges.
+     */
+    public Mono<FeedRange> getFeedRange(PartitionKey partitionKey) {
+        return rangeTable.map(table -> table.lookup(partitionKey));
+    }
+
+    /**
+     * Splits {@code operations} into one group per physical feed range, keyed by that range. The feed ranges are
+     * taken once per subscription. All groups must be consumed concurrently, e.g. with {@code flatMap}, or the
+     * stream stalls.
+     */
+    public Flux<GroupedFlux<FeedRange, CosmosItemOperation>> bucket(Flux<CosmosItemOperation> operations) {
+        return rangeTable.flatMapMany(table -> operations.groupBy(
+            operation -> table.lookup(operation.getPartitionKeyValue())));
+    }
+
+    /**
+     * Checks that the locally computed feed range of {@code partitionKey} overlaps the range the SDK resolves for
+     * {@link FeedRange#forLogicalPartition(PartitionKey)}.
+     */
+    public Mono<Boolean> verify(PartitionKey partitionKey) {
+        return getFeedRange(partitionKey).flatMap(feedRange -> ImplementationBridgeHelpers
+            .CosmosAsyncContainerHelper
+            .getCosmosAsyncContainerAccessor()
+            .checkFeedRangeOverlapping(container, FeedRange.forLogicalPartition(partitionKey), feedRange))
+            .doOnNext(matches -> {
+                if (!matches) {
+                    logger.warn("Local routing of partition key {} disagrees with the SDK", partitionKey);
+                }
+            });
+    }
+
+    private static final class RangeTable {
+        private final PartitionKeyDefinition definition;
+        private final String[] minInclusive;
+        private final FeedRange[] feedRanges;
+
+        private RangeTable(PartitionKeyDefinition definition, List<FeedRange> physicalRanges) {
+            List<FeedRangeEpkImpl> sorted = new ArrayList<>(physicalRanges.size());
+            for (FeedRange physicalRange : physicalRanges) {
+                sorted.add((FeedRangeEpkImpl) FeedRange.fromString(physicalRange.toString()));
+            }
+            sorted.sort(Comparator.comparing(range -> range.getRange().getMin()));
+
+            this.definition = definition;
+            this.minInclusive = new String[sorted.size()];
+            this.feedRanges = new FeedRange[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                minInclusive[i] = sorted.get(i).getRange().getMin();
+                feedRanges[i] = sorted.get(i);
+            }
+        }
+
+        private FeedRange lookup(PartitionKey partitionKey) {
+            String effectivePartitionKey = getEffectivePartitionKey(partitionKey, definition);
+            // The ranges are contiguous from the minimum EPK, so the owner is the last range starting at or before it
+            int low = 0;
+            int high = minInclusive.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (minInclusive[middle].compareTo(effectivePartitionKey) <= 0) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return feedRanges[low];
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.azure.cosmos.*;
 import com.azure.cosmos.examples.common.AccountSettings;
 import com.azure.cosmos.examples.common.Families;
 import com.azure.cosmos.examples.common.Family;
+import com.azure.cosmos.examples.common.PartitionKeyCache;
 //  <CosmosBulkOperationsImport>
 import com.azure.cosmos.models.*;
 //  </CosmosBulkOperationsImport>
@@ -14,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.util.ArrayList;
@@ -28,6 +30,9 @@ public class SampleBulkQuickStartAsync {
     private CosmosAsyncDatabase database;
     private CosmosAsyncContainer container;
 
+    //  The families share few last names, so their partition keys are built once and reused
+    private final PartitionKeyCache partitionKeyCache = new PartitionKeyCache(1024);
+
     public static void main(String[] args) {
         SampleBulkQuickStartAsync p = new SampleBulkQuickStartAsync();
 
@@ -123,6 +128,10 @@ public class SampleBulkQuickStartAsync {
         bulkPatchItems(familiesToReplace, patchOps);        
         logger.info("Bulk deletes.");
         bulkDeleteItems(families);
+        logger.info("Bulk creates bucketed by feed range.");
+        bulkCreateItemsByFeedRange(families);
+        logger.info("Bulk deletes.");
+        bulkDeleteItems(families);
         logger.info("Bulk upserts with BulkWriter abstraction");
         bulkUpsertItemsWithBulkWriterAbstraction();
         logger.info("Bulk upserts with BulkWriter Abstraction and Local Throughput Control");
@@ -190,7 +199,7 @@ public class SampleBulkQuickStartAsync {
     //  <BulkCreateItems>
     private void bulkCreateItems(Flux<Family> families) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
-            family -> CosmosBulkOperations.getCreateItemOperation(family, new PartitionKey(family.getLastName())));
+            family -> CosmosBulkOperations.getCreateItemOperation(family, partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations).blockLast();
     }
     //  </BulkCreateItems>
@@ -199,7 +208,7 @@ public class SampleBulkQuickStartAsync {
     private void bulkDeleteItems(Flux<Family> families) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
             family -> CosmosBulkOperations
-                .getDeleteItemOperation(family.getId(), new PartitionKey(family.getLastName())));
+                .getDeleteItemOperation(family.getId(), partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations).blockLast();
     }
     //  </BulkDeleteItems>
@@ -207,7 +216,7 @@ public class SampleBulkQuickStartAsync {
     //  <BulkUpsertItems>
     private void bulkUpsertItems(Flux<Family> families) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
-            family -> CosmosBulkOperations.getUpsertItemOperation(family, new PartitionKey(family.getLastName())));
+            family -> CosmosBulkOperations.getUpsertItemOperation(family, partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations).blockLast();
     }
     //  </BulkUpsertItems>   
@@ -216,7 +225,7 @@ public class SampleBulkQuickStartAsync {
     private void bulkPatchItems(Flux<Family> families, CosmosPatchOperations operations) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
             family -> CosmosBulkOperations
-                .getPatchItemOperation(family.getId(), new PartitionKey(family.getLastName()), operations));
+                .getPatchItemOperation(family.getId(), partitionKeyCache.get(family.getLastName()), operations));
         container.executeBulkOperations(cosmosItemOperations).blockLast();
     }
     //  </BulkPatchItems>
@@ -225,7 +234,7 @@ public class SampleBulkQuickStartAsync {
     private void bulkReplaceItems(Flux<Family> families) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
             family -> CosmosBulkOperations
-                .getReplaceItemOperation(family.getId(), family, new PartitionKey(family.getLastName())));
+                .getReplaceItemOperation(family.getId(), family, partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations).blockLast();
     }
     //  </BulkReplaceItems>
@@ -233,7 +242,7 @@ public class SampleBulkQuickStartAsync {
     //  <BulkCreateItemsWithResponseProcessingAndExecutionOptions>
     private void bulkCreateItemsWithResponseProcessing(Flux<Family> families) {
         Flux<CosmosItemOperation> cosmosItemOperations = families.map(
-            family -> CosmosBulkOperations.getCreateItemOperation(family, new PartitionKey(family.getLastName())));
+            family -> CosmosBulkOperations.getCreateItemOperation(family, partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations).flatMap(cosmosBulkOperationResponse -> {
 
             CosmosBulkItemResponse cosmosBulkItemResponse = cosmosBulkOperationResponse.getResponse();
@@ -276,11 +285,39 @@ public class SampleBulkQuickStartAsync {
         // When the RU has already been under saturation, increasing the concurrency will not help the situation,
         // rather it may cause more 429 and request timeout.
         bulkExecutionOptions.setMaxMicroBatchConcurrency(2);
-        Flux<CosmosItemOperation> cosmosItemOperations = families.map(family -> CosmosBulkOperations.getCreateItemOperation(family, new PartitionKey(family.getLastName())));
+        Flux<CosmosItemOperation> cosmosItemOperations = families.map(family -> CosmosBulkOperations.getCreateItemOperation(family, partitionKeyCache.get(family.getLastName())));
         container.executeBulkOperations(cosmosItemOperations, bulkExecutionOptions).blockLast();
     }
     //  </BulkCreateItemsWithResponseProcessingAndExecutionOptions>
 
+    //  <BulkCreateItemsByFeedRange>
+    private void bulkCreateItemsByFeedRange(Flux<Family> families) {
+        FeedRangeBucketer bucketer = new FeedRangeBucketer(container, Duration.ofMinutes(5));
+        Flux<CosmosItemOperation> cosmosItemOperations = families.map(
+            family -> CosmosBulkOperations.getCreateItemOperation(family, partitionKeyCache.get(family.getLastName())));
+
+        //  Operations are grouped by physical partition locally, and each partition gets its own bulk execution
+        //  on its own worker thread
+        bucketer.bucket(cosmosItemOperations)
+            .flatMap(bucket -> container
+                .executeBulkOperations(bucket.publishOn(Schedulers.parallel()))
+                .doOnNext(cosmosBulkOperationResponse -> logger.info(
+                    "Item ID: [{}]  Feed range: [{}]  Status Code: [{}]",
+                    cosmosBulkOperationResponse.getOperation().getId(),
+                    bucket.key(),
+                    cosmosBulkOperationResponse.getResponse() != null
+                        ? cosmosBulkOperationResponse.getResponse().getStatusCode() : "n/a")),
+                Integer.MAX_VALUE)
+            .blockLast();
+
+        boolean routedLikeSdk = families
+            .flatMap(family -> bucketer.verify(partitionKeyCache.get(family.getLastName())))
+            .all(Boolean::booleanValue)
+            .block();
+        logger.info("Local feed range routing matches the SDK: {}", routedLikeSdk);
+    }
+    //  </BulkCreateItemsByFeedRange>
+
     //  <BulkWriterAbstraction>
     private void bulkUpsertItemsWithBulkWriterAbstraction() {
         Family andersenFamilyItem = Families.getAndersenFamilyItem();
@@ -0,0 +1,112 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedCompactor class is an attempt to provide guidance for collapsing
+  intermediate versions of an item delivered by the AllVersionsAndDeletes Change Feed
+  when only the final state matters to the downstream sink
+ */
+package com.azure.cosmos.examples.changefeed;
+
+import com.azure.cosmos.models.ChangeFeedProcessorItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Collapses change events per (id, partition key), keeping only the last create, replace or delete of each item.
+ * <p>
+ * The output is ordered by the position of each item's last event, so events for different items keep their
+ * relative order and the surviving event of an item is never emitted before an event that preceded it.
+ * Compaction can be applied per batch ({@link #compact(List)}), or over a time / size window spanning several
+ * batches ({@link #compact(Flux, Duration, int)}).
+ */
+public class ChangeFeedCompactor<T> {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedCompactor.class);
+
+    private final Function<T, String> keyExtractor;
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong eventsEmitted = new AtomicLong();
+
+    public ChangeFeedCompactor(Function<T, String> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Compactor for the items handed to a Change Feed Processor in AllVersionsAndDeletes mode.
+     */
+    public static ChangeFeedCompactor<ChangeFeedProcessorItem> forProcessorItems(String partitionKeyPath) {
+        return new ChangeFeedCompactor<>(item -> itemKey(item.getCurrent(), item.getPrevious(), partitionKeyPath));
+    }
+
+    /**
+     * Compactor for the raw JsonNode documents returned by the pull model in AllVersionsAndDeletes mode.
+     */
+    public static ChangeFeedCompactor<JsonNode> forPullModel(String partitionKeyPath) {
+        return new ChangeFeedCompactor<>(node -> itemKey(node.get("current"), node.get("previous"), partitionKeyPath));
+    }
+
+    /**
+     * Keeps the last event of each item within one batch.
+     */
+    public List<T> compact(List<T> events) {
+        String[] keys = new String[events.size()];
+        Map<String, Integer> lastEventIndex = new HashMap<>(events.size() * 2);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyExtractor.apply(events.get(i));
+            if (keys[i] != null) {
+                lastEventIndex.put(keys[i], i);
+            }
+        }
+
+        List<T> compacted = new ArrayList<>(lastEventIndex.size());
+        for (int i = 0; i < keys.length; i++) {
+            // Events without an id have nothing to collapse against, so they pass through in place
+            if (keys[i] == null || lastEventIndex.get(keys[i]) == i) {
+                compacted.add(events.get(i));
+            }
+        }
+
+        eventsReceived.addAndGet(events.size());
+        eventsEmitted.addAndGet(compacted.size());
+        logger.debug("Compacted {} event(s) to {}", events.size(), compacted.size());
+        return compacted;
+    }
+
+    /**
+     * Keeps the last event of each item within windows that close after {@code window} or {@code maxWindowSize}
+     * events, whichever comes first. Windows are only requested from upstream as they are consumed, so a slow
+     * subscriber holds the feed back instead of failing with an overflow when a window closes on the timer.
+     */
+    public Flux<List<T>> compact(Flux<T> events, Duration window, int maxWindowSize) {
+        return events
+            .bufferTimeout(maxWindowSize, window, true)
+            .map(this::compact);
+    }
+
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    public long getEventsEmitted() {
+        return eventsEmitted.get();
+    }
+
+    private static String itemKey(JsonNode current, JsonNode previous, String partitionKeyPath) {
+        // Deletes carry no current image, the id and partition key come with the previous image instead
+        JsonNode image = current != null && !current.isNull() && current.has("id") ? current : previous;
+        if (image == null || !image.has("id")) {
+            return null;
+        }
+        return image.get("id").asText() + "|" + image.at(partitionKeyPath).asText();
+    }
+}
@@ -0,0 +1,370 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The LeaseContainerBenchmark class is an attempt to provide guidance for sizing the lease container and
+  tuning lease intervals of the Change Feed Processor, by measuring their cost and effect on rebalancing
+ */
+package com.azure.cosmos.examples.changefeed;
+
+import com.azure.cosmos.ChangeFeedProcessor;
+import com.azure.cosmos.ChangeFeedProcessorBuilder;
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.CosmosDiagnosticsContext;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.ChangeFeedProcessorOptions;
+import com.azure.cosmos.models.CosmosClientTelemetryConfig;
+import com.azure.cosmos.models.CosmosContainerProperties;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.azure.cosmos.models.ThroughputProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Benchmark for the lease container of the Change Feed Processor.
+ * <p>
+ * For every combination of lease renew interval, lease expiration interval, feed poll delay and max items per
+ * batch, N processor hosts are started in this JVM against the configured account (the emulator by default) while
+ * documents are written at a steady rate. Each run reports:
+ * <ul>
+ * <li>the RU per hour consumed on the lease container, in total and per operation type, captured with a
+ * diagnostics handler on the client the processors use;</li>
+ * <li>the time until leases are evenly distributed again after a host joins and after a host leaves;</li>
+ * <li>the end-to-end latency from document write to delivery to a handler (p50 / p99).</li>
+ * </ul>
+ * Lease ownership is observed through a separate client, so the observation does not count towards the lease RU.
+ * The lease acquire interval is set equal to the renew interval. Rebalancing can only be observed when the feed
+ * container has more physical partitions (leases) than hosts, hence the high feed container throughput.
+ */
+public class LeaseContainerBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(LeaseContainerBenchmark.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    public static final String DATABASE_NAME = "db_" + UUID.randomUUID();
+    public static final String FEED_COLLECTION_NAME = "feed_" + UUID.randomUUID();
+    public static final String LEASE_COLLECTION_NAME = FEED_COLLECTION_NAME + "-leases";
+
+    private static final int HOSTS = 3;
+    private static final int FEED_THROUGHPUT = 24000;
+    private static final int DOCUMENTS_PER_SECOND = 20;
+    private static final Duration STEADY_STATE = Duration.ofMinutes(2);
+    private static final Duration REBALANCE_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration OWNERSHIP_POLL = Duration.ofMillis(500);
+
+    private static final Duration[] LEASE_RENEW_INTERVALS = {Duration.ofSeconds(17), Duration.ofSeconds(5)};
+    private static final Duration[] LEASE_EXPIRATION_INTERVALS = {Duration.ofSeconds(60), Duration.ofSeconds(20)};
+    private static final Duration[] FEED_POLL_DELAYS = {Duration.ofSeconds(5), Duration.ofSeconds(1)};
+    private static final int[] MAX_ITEM_COUNTS = {100, 1000};
+
+    private final Map<String, DoubleAdder> leaseChargeByOperation = new ConcurrentHashMap<>();
+    private final List<Long> latencies = new ArrayList<>();
+
+    private CosmosAsyncClient processorClient;
+    private CosmosAsyncClient observerClient;
+    private CosmosAsyncContainer feedContainer;
+    private CosmosAsyncContainer leaseContainer;
+    private CosmosAsyncContainer observedLeaseContainer;
+
+    public static void main(String[] args) {
+        LeaseContainerBenchmark benchmark = new LeaseContainerBenchmark();
+        try {
+            benchmark.setUp();
+            List<Result> results = new ArrayList<>();
+            int run = 0;
+            for (Duration renew : LEASE_RENEW_INTERVALS) {
+                for (Duration expiration : LEASE_EXPIRATION_INTERVALS) {
+                    for (Duration pollDelay : FEED_POLL_DELAYS) {
+                        for (int maxItemCount : MAX_ITEM_COUNTS) {
+                            Config config = new Config(renew, expiration, pollDelay, maxItemCount);
+                            results.add(benchmark.run("bench" + run++ + "_", config));
+                        }
+                    }
+                }
+            }
+            logger.info("renew / expiration / poll delay / max items | lease RU/h | join rebalance s | leave rebalance s | p50 ms | p99 ms");
+            for (Result result : results) {
+                logger.info(result.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Lease container benchmark failed with %s", e));
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private void setUp() {
+        // Only the processors' client counts request charges, and only for the lease container
+        processorClient = new CosmosClientBuilder()
+            .endpoint(AccountSettings.HOST)
+            .key(AccountSettings.MASTER_KEY)
+            .consistencyLevel(ConsistencyLevel.SESSION)
+            .clientTelemetryConfig(new CosmosClientTelemetryConfig().diagnosticsHandler(this::recordLeaseCharge))
+            .buildAsyncClient();
+        observerClient = new CosmosClientBuilder()
+            .endpoint(AccountSettings.HOST)
+            .key(AccountSettings.MASTER_KEY)
+            .consistencyLevel(ConsistencyLevel.SESSION)
+            .buildAsyncClient();
+
+        CosmosAsyncDatabase database = SampleChangeFeedProcessor.createNewDatabase(processorClient, DATABASE_NAME);
+        database.createContainerIfNotExists(
+            new CosmosContainerProperties(FEED_COLLECTION_NAME, "/pk"),
+            ThroughputProperties.createManualThroughput(FEED_THROUGHPUT)).block();
+        feedContainer = database.getContainer(FEED_COLLECTION_NAME);
+        leaseContainer = SampleChangeFeedProcessor.createNewLeaseCollection(processorClient, DATABASE_NAME, LEASE_COLLECTION_NAME);
+        observedLeaseContainer = observerClient.getDatabase(DATABASE_NAME).getContainer(LEASE_COLLECTION_NAME);
+        logger.info("Feed container has {} feed range(s)", feedContainer.getFeedRanges().block().size());
+    }
+
+    private Result run(String leasePrefix, Config config) throws InterruptedException {
+        logger.info("Run {}: {}", leasePrefix, config);
+        // Insertion ordered, so the host that leaves is the oldest one
+        Map<String, ChangeFeedProcessor> hosts = new LinkedHashMap<>();
+        Disposable writer = null;
+        try {
+            for (int i = 0; i < HOSTS; i++) {
+                startHost(leasePrefix + "host" + i, leasePrefix, config, hosts);
+            }
+            awaitBalanced(leasePrefix, hosts.keySet());
+            writer = startWriter();
+
+            // Steady state: only renewals, checkpoints and the acquire loop touch the lease container
+            resetMeasurements();
+            long steadyStart = System.nanoTime();
+            Thread.sleep(STEADY_STATE.toMillis());
+            double steadyHours = (System.nanoTime() - steadyStart) / 3.6e12;
+            Map<String, Double> chargePerHour = new TreeMap<>();
+            double totalPerHour = 0;
+            for (Map.Entry<String, DoubleAdder> entry : leaseChargeByOperation.entrySet()) {
+                double perHour = entry.getValue().sum() / steadyHours;
+                chargePerHour.put(entry.getKey(), perHour);
+                totalPerHour += perHour;
+            }
+            long[] latency = latencyPercentiles();
+
+            startHost(leasePrefix + "host" + HOSTS, leasePrefix, config, hosts);
+            Duration joinRebalance = awaitBalanced(leasePrefix, hosts.keySet());
+
+            hosts.remove(hosts.keySet().iterator().next()).stop().block();
+            Duration leaveRebalance = awaitBalanced(leasePrefix, hosts.keySet());
+
+            Result result = new Result(config, totalPerHour, chargePerHour, joinRebalance, leaveRebalance, latency);
+            logger.info("Run {} done: {}", leasePrefix, result);
+            return result;
+        } finally {
+            if (writer != null) {
+                writer.dispose();
+            }
+            for (ChangeFeedProcessor host : hosts.values()) {
+                host.stop().block();
+            }
+        }
+    }
+
+    private void startHost(String hostName, String leasePrefix, Config config, Map<String, ChangeFeedProcessor> hosts) {
+        ChangeFeedProcessorOptions options = new ChangeFeedProcessorOptions();
+        options.setLeasePrefix(leasePrefix);
+        options.setStartFromBeginning(false);
+        options.setLeaseRenewInterval(config.leaseRenewInterval);
+        options.setLeaseAcquireInterval(config.leaseRenewInterval);
+        options.setLeaseExpirationInterval(config.leaseExpirationInterval);
+        options.setFeedPollDelay(config.feedPollDelay);
+        options.setMaxItemCount(config.maxItemCount);
+
+        ChangeFeedProcessor processor = new ChangeFeedProcessorBuilder()
+            .hostName(hostName)
+            .feedContainer(feedContainer)
+            .leaseContainer(leaseContainer)
+            .options(options)
+            .handleChanges(this::recordLatencies)
+            .buildChangeFeedProcessor();
+        processor.start().block();
+        hosts.put(hostName, processor);
+    }
+
+    private Disposable startWriter() {
+        return Flux.interval(Duration.ofMillis(1000 / DOCUMENTS_PER_SECOND))
+            .onBackpressureDrop()
+            .flatMap(i -> {
+                ObjectNode document = OBJECT_MAPPER.createObjectNode();
+                String id = UUID.randomUUID().toString();
+                document.put("id", id);
+                document.put("pk", id);
+                document.put("writtenAt", System.currentTimeMillis());
+                return feedContainer.createItem(document);
+            })
+            .subscribe(response -> { }, error -> logger.error("Writer failed", error));
+    }
+
+    private void recordLeaseCharge(CosmosDiagnosticsContext context, com.azure.core.util.Context tracingContext) {
+        if (LEASE_COLLECTION_NAME.equals(context.getContainerName())) {
+            leaseChargeByOperation
+                .computeIfAbsent(context.getOperationType(), operation -> new DoubleAdder())
+                .add(context.getTotalRequestCharge());
+        }
+    }
+
+    private void recordLatencies(List<JsonNode> documents) {
+        long now = System.currentTimeMillis();
+        synchronized (latencies) {
+            for (JsonNode document : documents) {
+                if (document.has("writtenAt")) {
+                    latencies.add(now - document.get("writtenAt").asLong());
+                }
+            }
+        }
+    }
+
+    private void resetMeasurements() {
+        leaseChargeByOperation.clear();
+        synchronized (latencies) {
+            latencies.clear();
+        }
+    }
+
+    private long[] latencyPercentiles() {
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+        }
+        if (sorted.length == 0) {
+            return new long[] {-1, -1};
+        }
+        Arrays.sort(sorted);
+        return new long[] {sorted[(sorted.length - 1) / 2], sorted[(int) ((sorted.length - 1) * 0.99)]};
+    }
+
+    /**
+     * Polls lease ownership until every lease of the run is owned by a running host and no running host owns more
+     * than one lease more than any other.
+     */
+    private Duration awaitBalanced(String leasePrefix, Set<String> hostNames) throws InterruptedException {
+        SqlQuerySpec query = new SqlQuerySpec(
+            "SELECT c.Owner FROM c WHERE STARTSWITH(c.id, @prefix) AND IS_DEFINED(c.LeaseToken)",
+            new SqlParameter("@prefix", leasePrefix));
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < REBALANCE_TIMEOUT.toNanos()) {
+            Map<String, Integer> owned = new HashMap<>();
+            for (String hostName : hostNames) {
+                owned.put(hostName, 0);
+            }
+            boolean allOwned = true;
+            int leases = 0;
+            for (JsonNode lease : observedLeaseContainer
+                .queryItems(query, new CosmosQueryRequestOptions(), JsonNode.class)
+                .toIterable()) {
+                leases++;
+                String owner = lease.path("Owner").asText(null);
+                if (owner == null || !owned.containsKey(owner)) {
+                    allOwned = false;
+                } else {
+                    owned.merge(owner, 1, Integer::sum);
+                }
+            }
+            int max = 0;
+            int min = Integer.MAX_VALUE;
+            for (int count : owned.values()) {
+                max = Math.max(max, count);
+                min = Math.min(min, count);
+            }
+            if (leases > 0 && allOwned && max - min <= 1) {
+                return Duration.ofNanos(System.nanoTime() - start);
+            }
+            Thread.sleep(OWNERSHIP_POLL.toMillis());
+        }
+        logger.warn("Leases of {} did not balance within {}", leasePrefix, REBALANCE_TIMEOUT);
+        return REBALANCE_TIMEOUT;
+    }
+
+    private void tearDown() {
+        try {
+            logger.info("Deleting Cosmos DB resources");
+            if (processorClient != null)
+                processorClient.getDatabase(DATABASE_NAME).delete().block();
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the clients. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (processorClient != null)
+            processorClient.close();
+        if (observerClient != null)
+            observerClient.close();
+        logger.info("Done.");
+    }
+
+    private static final class Config {
+        private final Duration leaseRenewInterval;
+        private final Duration leaseExpirationInterval;
+        private final Duration feedPollDelay;
+        private final int maxItemCount;
+
+        private Config(Duration leaseRenewInterval, Duration leaseExpirationInterval, Duration feedPollDelay, int maxItemCount) {
+            this.leaseRenewInterval = leaseRenewInterval;
+            this.leaseExpirationInterval = leaseExpirationInterval;
+            this.feedPollDelay = feedPollDelay;
+            this.maxItemCount = maxItemCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%ds / %ds / %ds / %d", leaseRenewInterval.getSeconds(),
+                leaseExpirationInterval.getSeconds(), feedPollDelay.getSeconds(), maxItemCount);
+        }
+    }
+
+    private static final class Result {
+        private final Config config;
+        private final double leaseChargePerHour;
+        private final Map<String, Double> leaseChargePerHourByOperation;
+        private final Duration joinRebalance;
+        private final Duration leaveRebalance;
+        private final long[] latencyMillis;
+
+        private Result(Config config, double leaseChargePerHour, Map<String, Double> leaseChargePerHourByOperation,
+                       Duration joinRebalance, Duration leaveRebalance, long[] latencyMillis) {
+            this.config = config;
+            this.leaseChargePerHour = leaseChargePerHour;
+            this.leaseChargePerHourByOperation = leaseChargePerHourByOperation;
+            this.joinRebalance = joinRebalance;
+            this.leaveRebalance = leaveRebalance;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s | %.0f %s | %.1f | %.1f | %d | %d", config, leaseChargePerHour,
+                leaseChargePerHourByOperation, joinRebalance.toMillis() / 1000.0, leaveRebalance.toMillis() / 1000.0,
+                latencyMillis[0], latencyMillis[1]);
+        }
+    }
+}
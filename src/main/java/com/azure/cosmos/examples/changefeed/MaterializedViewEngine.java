@@ -0,0 +1,718 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The MaterializedViewEngine class is an attempt to provide guidance for keeping
+  aggregate views (COUNT / SUM grouped by a JSON path) up to date from the Change Feed
+  instead of re-running COUNT / GROUP BY queries against the source container
+ */
+package com.azure.cosmos.examples.changefeed;
+
+import com.azure.cosmos.ChangeFeedProcessor;
+import com.azure.cosmos.ChangeFeedProcessorBuilder;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.ChangeFeedProcessorOptions;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyDefinition;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Keeps one aggregate view of a feed container up to date from its Change Feed.
+ * <p>
+ * The view is held in memory in a {@link GroupStore} (group keys interned to int slots, aggregates in primitive
+ * arrays) and is written to the view container in {@link CosmosBatch}es, one partition per view. The flush happens
+ * inside the Change Feed handler, so the processor only checkpoints its lease after the view rows covering that
+ * batch have been committed. The contributions described below are written before the view rows, so they are never
+ * behind them.
+ * <p>
+ * The feed container is only scanned once, when the view is first built; a state row ({@code "_state"}) records
+ * that the build completed and whether the engine was last stopped cleanly. A later start loads the view rows, or,
+ * after a crash, recomputes the aggregates from the persisted contributions, and the processor resumes from its
+ * leases.
+ * <p>
+ * Each item's last contribution (group, value, _ts, _etag and, when it came from the Change Feed, _lsn) is tracked
+ * by _rid, so an update moves the item between groups and a version delivered again, e.g. after a restart (the
+ * processor resumes from its last checkpoint), is skipped by its _etag. Versions are ordered by _lsn where both have
+ * one, else by _ts; a Change Feed version with the same _ts as a projected one (queries do not return _lsn) is only
+ * applied if the item still holds it, checked with a point read.
+ * <p>
+ * Each contribution is written to the view container in a logical partition of its own, {@code "<view>:c_<rid>"},
+ * so contributions spread over the physical partitions of the view container rather than filling one hot logical
+ * partition. Only the most recently used ones are kept in memory, so memory does not grow with the feed container;
+ * the others are read back with readMany when their item changes. The Change Feed in latest version mode does not
+ * surface deletes; use a soft-delete flag plus TTL on the feed container if deletes have to be reflected.
+ */
+public class MaterializedViewEngine {
+    private static final Logger logger = LoggerFactory.getLogger(MaterializedViewEngine.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    // A transactional batch holds at most 100 operations
+    private static final int MAX_BATCH_OPERATIONS = 100;
+    private static final int DEFAULT_MAX_CACHED_CONTRIBUTIONS = 100_000;
+    private static final String CONTRIBUTION_OF_FIELD = "contributionOf";
+    private static final String STATE_ROW_ID = "_state";
+    private static final int NOT_FOUND = 404;
+    private static final String VIEW_PARTITION_KEY_FIELD = "view";
+    private static final String PROJECTED_GROUP_PATH = "/g";
+    private static final String PROJECTED_VALUE_PATH = "/v";
+
+    public enum Aggregate {
+        COUNT,
+        SUM
+    }
+
+    private final String viewName;
+    private final String groupByPath;
+    private final String valuePath;
+    private final Aggregate aggregate;
+    private final CosmosAsyncContainer feedContainer;
+    private final CosmosAsyncContainer leaseContainer;
+    private final CosmosAsyncContainer viewContainer;
+    private final Mono<PartitionKeyDefinition> feedPartitionKeyDefinition;
+
+    private final GroupStore store = new GroupStore();
+    private final Map<String, ItemContribution> cachedContributions;
+    // Contributions not written yet; kept apart from the cache so they are never evicted before the next flush
+    private final Map<String, ItemContribution> dirtyContributions = new HashMap<>();
+    private long eventsApplied;
+    private Instant projectionStartedAt;
+
+    private ChangeFeedProcessor changeFeedProcessor;
+
+    /**
+     * @param viewName name of the view; also the partition key value of its rows in the view container
+     * @param feedContainer container whose Change Feed is consumed
+     * @param leaseContainer lease container for the Change Feed Processor
+     * @param viewContainer container the view rows are written to, partitioned by /view
+     * @param groupByPath JSON path to group by, for example "/district"
+     * @param aggregate aggregate to maintain per group
+     * @param valuePath JSON path of the numeric value to sum, only used with {@link Aggregate#SUM}
+     */
+    public MaterializedViewEngine(
+        String viewName,
+        CosmosAsyncContainer feedContainer,
+        CosmosAsyncContainer leaseContainer,
+        CosmosAsyncContainer viewContainer,
+        String groupByPath,
+        Aggregate aggregate,
+        String valuePath) {
+
+        this(viewName, feedContainer, leaseContainer, viewContainer, groupByPath, aggregate, valuePath,
+            DEFAULT_MAX_CACHED_CONTRIBUTIONS);
+    }
+
+    /**
+     * @param maxCachedContributions item contributions kept in memory, least recently used evicted first
+     */
+    public MaterializedViewEngine(
+        String viewName,
+        CosmosAsyncContainer feedContainer,
+        CosmosAsyncContainer leaseContainer,
+        CosmosAsyncContainer viewContainer,
+        String groupByPath,
+        Aggregate aggregate,
+        String valuePath,
+        int maxCachedContributions) {
+
+        if (aggregate == Aggregate.SUM && valuePath == null) {
+            throw new IllegalArgumentException("A value path is required for SUM views.");
+        }
+        this.viewName = viewName;
+        this.feedContainer = feedContainer;
+        this.leaseContainer = leaseContainer;
+        this.viewContainer = viewContainer;
+        this.groupByPath = groupByPath;
+        this.aggregate = aggregate;
+        this.valuePath = valuePath;
+        this.feedPartitionKeyDefinition = feedContainer.read()
+            .map(response -> response.getProperties().getPartitionKeyDefinition())
+            .cache();
+        this.cachedContributions = new LinkedHashMap<String, ItemContribution>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ItemContribution> eldest) {
+                return size() > maxCachedContributions;
+            }
+        };
+    }
+
+    /**
+     * Restores the in-memory view from the view container and starts the Change Feed Processor. Only a view that was
+     * never built completely is built with a single projection over the feed container.
+     * <p>
+     * After a clean {@link #stop()}, the view rows are loaded as they are. Otherwise the view rows may lag behind the
+     * contributions, so the aggregates are recomputed from the contributions with a GROUP BY query and the rows that
+     * differ are rewritten. New leases start at the time the projection began, and the leases of an earlier run
+     * resume from their checkpoints; events already applied are skipped by their _etag.
+     */
+    public Mono<Void> start(String hostName, ChangeFeedProcessorOptions options) {
+        ChangeFeedProcessorOptions processorOptions = options != null ? options : new ChangeFeedProcessorOptions();
+        return readState()
+            .flatMap(this::restore)
+            .switchIfEmpty(Mono.defer(this::project))
+            .flatMap(projectionStart -> {
+                processorOptions.setStartTime(projectionStart);
+                changeFeedProcessor = new ChangeFeedProcessorBuilder()
+                    .hostName(hostName)
+                    .options(processorOptions)
+                    .feedContainer(feedContainer)
+                    .leaseContainer(leaseContainer)
+                    .handleChanges(handleChanges())
+                    .buildChangeFeedProcessor();
+                return changeFeedProcessor.start();
+            });
+    }
+
+    /**
+     * Stops the Change Feed Processor, flushes what is left and marks the view as stopped cleanly, so the next start
+     * loads the view rows as they are.
+     */
+    public Mono<Void> stop() {
+        if (changeFeedProcessor == null) {
+            return Mono.empty();
+        }
+        return changeFeedProcessor.stop()
+            .then(Mono.fromRunnable(() -> {
+                flush();
+                writeState(true);
+            }).subscribeOn(Schedulers.boundedElastic()))
+            .then();
+    }
+
+    private Mono<JsonNode> readState() {
+        return viewContainer
+            .readItem(STATE_ROW_ID, new PartitionKey(viewName), JsonNode.class)
+            .map(CosmosItemResponse::getItem)
+            .onErrorResume(CosmosException.class, e -> e.getStatusCode() == NOT_FOUND ? Mono.empty() : Mono.error(e));
+    }
+
+    private Mono<Instant> restore(JsonNode state) {
+        Instant projectionStart = Instant.parse(state.get("projectionStartedAt").asText());
+        boolean stoppedCleanly = state.path("stoppedCleanly").asBoolean(false);
+        logger.info("Restoring view [{}] from its {}", viewName, stoppedCleanly ? "rows" : "contributions");
+
+        return readViewRows().flatMap(rows -> (stoppedCleanly ? Mono.just(rows) : aggregateContributions())
+            // Writing the rows that differ blocks
+            .publishOn(Schedulers.boundedElastic())
+            .map(totals -> {
+                restoreStore(rows, totals);
+                projectionStartedAt = projectionStart;
+                flush();
+                writeState(false);
+                return projectionStart;
+            }));
+    }
+
+    private Mono<Instant> project() {
+        Instant projectionStart = Instant.now();
+        logger.info("Building view [{}] from feed container [{}]", viewName, feedContainer.getId());
+
+        // Rows left by an interrupted build are zeroed unless the projection sees their group again
+        return readViewRows().flatMap(rows -> feedContainer
+            .queryItems(projectionQuery(), new CosmosQueryRequestOptions(), JsonNode.class)
+            .byPage()
+            // Applying a page reads and writes contributions, which blocks
+            .publishOn(Schedulers.boundedElastic())
+            .doOnNext(page -> {
+                apply(page.getResults(), PROJECTED_GROUP_PATH, PROJECTED_VALUE_PATH, true);
+                flush();
+            })
+            .then(Mono.fromCallable(() -> {
+                zeroMissingGroups(rows);
+                projectionStartedAt = projectionStart;
+                flush();
+                writeState(false);
+                return projectionStart;
+            })));
+    }
+
+    /**
+     * Count and sum per group of the persisted view rows.
+     */
+    private Mono<Map<String, double[]>> readViewRows() {
+        return queryTotals(
+            new SqlQuerySpec("SELECT c[\"group\"] AS g, c[\"count\"] AS n, c[\"sum\"] AS s FROM c "
+                + "WHERE STARTSWITH(c.id, \"g_\")"),
+            new CosmosQueryRequestOptions().setPartitionKey(new PartitionKey(viewName)));
+    }
+
+    /**
+     * Count and sum per group of the persisted contributions, across their partitions.
+     */
+    private Mono<Map<String, double[]>> aggregateContributions() {
+        return queryTotals(
+            new SqlQuerySpec("SELECT c[\"group\"] AS g, COUNT(1) AS n, SUM(c[\"value\"]) AS s FROM c "
+                + "WHERE c." + CONTRIBUTION_OF_FIELD + " = @view AND IS_STRING(c[\"group\"]) GROUP BY c[\"group\"]",
+                new SqlParameter("@view", viewName)),
+            new CosmosQueryRequestOptions());
+    }
+
+    private Mono<Map<String, double[]>> queryTotals(SqlQuerySpec query, CosmosQueryRequestOptions options) {
+        return viewContainer
+            .queryItems(query, options, JsonNode.class)
+            .collectMap(
+                row -> row.path("g").asText(),
+                row -> new double[] {row.path("n").asDouble(0), row.path("s").asDouble(0)});
+    }
+
+    /**
+     * Loads {@code totals} into the empty store and marks the groups whose persisted row differs.
+     */
+    private synchronized void restoreStore(Map<String, double[]> rows, Map<String, double[]> totals) {
+        for (Map.Entry<String, double[]> total : totals.entrySet()) {
+            store.add(store.slotFor(total.getKey()), (long) total.getValue()[0], total.getValue()[1]);
+        }
+        store.dirty.clear();
+        for (int slot = 0; slot < store.slots.size(); slot++) {
+            double[] row = rows.get(store.keys[slot]);
+            if (row == null || row[0] != store.counts[slot] || row[1] != store.sums[slot]) {
+                store.dirty.set(slot);
+            }
+        }
+        zeroMissingGroups(rows);
+    }
+
+    /**
+     * Marks the persisted rows of groups the store does not hold, so they are rewritten with zero.
+     */
+    private synchronized void zeroMissingGroups(Map<String, double[]> rows) {
+        for (String group : rows.keySet()) {
+            if (store.slotOf(group) < 0) {
+                store.add(store.slotFor(group), 0, 0);
+            }
+        }
+    }
+
+    private void writeState(boolean stoppedCleanly) {
+        ObjectNode row = OBJECT_MAPPER.createObjectNode();
+        row.put("id", STATE_ROW_ID);
+        row.put(VIEW_PARTITION_KEY_FIELD, viewName);
+        row.put("projectionStartedAt", projectionStartedAt.toString());
+        row.put("stoppedCleanly", stoppedCleanly);
+        row.put("updatedAt", Instant.now().toString());
+        viewContainer.upsertItem(row, new PartitionKey(viewName), new CosmosItemRequestOptions()).block();
+    }
+
+    /**
+     * Current aggregate for a group, served from memory.
+     */
+    public synchronized double get(String groupKey) {
+        int slot = store.slotOf(groupKey);
+        if (slot < 0) {
+            return 0;
+        }
+        return aggregate == Aggregate.COUNT ? store.counts[slot] : store.sums[slot];
+    }
+
+    public synchronized long getEventsApplied() {
+        return eventsApplied;
+    }
+
+    // <Delegate>
+    private Consumer<List<JsonNode>> handleChanges() {
+        return (List<JsonNode> docs) -> {
+            apply(docs, groupByPath, valuePath, false);
+            // Blocking here is deliberate: the lease is checkpointed once this handler returns,
+            // so the view rows must be committed first.
+            flush();
+        };
+    }
+    // </Delegate>
+
+    /**
+     * @param rebuilding the changes come from the initial projection, which starts from an empty store, so earlier
+     * contributions are not subtracted
+     */
+    private void apply(List<JsonNode> docs, String groupPath, String sumPath, boolean rebuilding) {
+        Map<String, ItemContribution> loaded = loadContributions(docs);
+        Map<String, String> currentEtags = rebuilding
+            ? Collections.emptyMap()
+            : readCurrentEtags(unordered(docs, loaded));
+        synchronized (this) {
+            for (JsonNode doc : docs) {
+                JsonNode rid = doc.get("_rid");
+                if (rid == null) {
+                    continue;
+                }
+                ItemContribution previous = contributionOf(rid.asText(), loaded);
+                long ts = doc.path("_ts").asLong(0);
+                String etag = doc.path("_etag").asText(null);
+                long lsn = doc.path("_lsn").asLong(0);
+                if (!rebuilding && previous != null) {
+                    Order order = previous.orderOf(ts, etag, lsn);
+                    if (order == Order.UNKNOWN) {
+                        // Only the version the item holds now is known to be the latest
+                        order = etag != null && etag.equals(currentEtags.get(rid.asText())) ? Order.NEWER : Order.OLDER;
+                    }
+                    if (order != Order.NEWER) {
+                        // already applied, e.g. replayed after a restart, or older than the applied version
+                        continue;
+                    }
+                }
+                if (!rebuilding && previous != null && previous.group != null) {
+                    store.add(store.slotFor(previous.group), -1, -previous.value);
+                }
+
+                JsonNode group = doc.at(groupPath);
+                ItemContribution current;
+                if (group.isMissingNode() || group.isNull()) {
+                    current = new ItemContribution(null, 0, ts, etag, lsn);
+                } else {
+                    double value = aggregate == Aggregate.SUM ? doc.at(sumPath).asDouble(0) : 0;
+                    current = new ItemContribution(group.asText(), value, ts, etag, lsn);
+                    store.add(store.slotFor(current.group), 1, value);
+                }
+                if (current.equals(previous)) {
+                    cachedContributions.put(rid.asText(), current);
+                } else {
+                    dirtyContributions.put(rid.asText(), current);
+                }
+                eventsApplied++;
+            }
+        }
+    }
+
+    /**
+     * Changes whose order against the applied version of their item cannot be told from _lsn or _ts.
+     */
+    private synchronized List<JsonNode> unordered(List<JsonNode> docs, Map<String, ItemContribution> loaded) {
+        List<JsonNode> unordered = new ArrayList<>();
+        for (JsonNode doc : docs) {
+            String rid = doc.path("_rid").asText(null);
+            ItemContribution previous = rid == null ? null : contributionOf(rid, loaded);
+            if (previous == null) {
+                continue;
+            }
+            Order order = previous.orderOf(
+                doc.path("_ts").asLong(0), doc.path("_etag").asText(null), doc.path("_lsn").asLong(0));
+            if (order == Order.UNKNOWN) {
+                unordered.add(doc);
+            }
+        }
+        return unordered;
+    }
+
+    /**
+     * Current _etag by _rid of the items of {@code docs}, read from the feed container; deleted items are left out.
+     */
+    private Map<String, String> readCurrentEtags(List<JsonNode> docs) {
+        if (docs.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        PartitionKeyDefinition definition = feedPartitionKeyDefinition.block();
+        return Flux.fromIterable(docs)
+            .flatMap(doc -> feedContainer
+                .readItem(doc.get("id").asText(), PartitionKey.fromItem(toMap(doc), definition), JsonNode.class)
+                .onErrorResume(CosmosException.class,
+                    e -> e.getStatusCode() == NOT_FOUND ? Mono.empty() : Mono.error(e)))
+            .collectMap(
+                response -> response.getItem().path("_rid").asText(),
+                response -> response.getItem().path("_etag").asText())
+            .block();
+    }
+
+    private static Map<String, Object> toMap(JsonNode doc) {
+        return OBJECT_MAPPER.convertValue(doc, new TypeReference<Map<String, Object>>() { });
+    }
+
+    private ItemContribution contributionOf(String rid, Map<String, ItemContribution> loaded) {
+        ItemContribution contribution = dirtyContributions.get(rid);
+        if (contribution == null) {
+            contribution = cachedContributions.get(rid);
+        }
+        return contribution != null ? contribution : loaded.get(rid);
+    }
+
+    /**
+     * Reads the persisted contributions of the items that are not in memory.
+     */
+    private Map<String, ItemContribution> loadContributions(List<JsonNode> docs) {
+        Set<CosmosItemIdentity> missing = new LinkedHashSet<>();
+        synchronized (this) {
+            for (JsonNode doc : docs) {
+                String rid = doc.path("_rid").asText(null);
+                if (rid != null && !dirtyContributions.containsKey(rid) && !cachedContributions.containsKey(rid)) {
+                    missing.add(new CosmosItemIdentity(contributionPartitionKey(rid), contributionId(rid)));
+                }
+            }
+        }
+        Map<String, ItemContribution> loaded = new HashMap<>();
+        if (missing.isEmpty()) {
+            return loaded;
+        }
+        FeedResponse<JsonNode> response = viewContainer.readMany(new ArrayList<>(missing), JsonNode.class).block();
+        if (response != null) {
+            for (JsonNode stored : response.getResults()) {
+                loaded.put(stored.path("rid").asText(), ItemContribution.fromJson(stored));
+            }
+        }
+        return loaded;
+    }
+
+    private synchronized void flush() {
+        int dirtySlots = store.dirty.cardinality();
+        if (dirtySlots == 0 && dirtyContributions.isEmpty()) {
+            return;
+        }
+
+        // Contributions first: after a failure between the two, the view rows are recomputed from them on restart
+        int contributions = dirtyContributions.size();
+        writeContributions();
+
+        PartitionKey partitionKey = new PartitionKey(viewName);
+        CosmosBatch batch = CosmosBatch.createCosmosBatch(partitionKey);
+        int operations = 0;
+
+        for (int slot = store.dirty.nextSetBit(0); slot >= 0; slot = store.dirty.nextSetBit(slot + 1)) {
+            if (operations == MAX_BATCH_OPERATIONS) {
+                executeBatch(batch);
+                batch = CosmosBatch.createCosmosBatch(partitionKey);
+                operations = 0;
+            }
+            batch.upsertItemOperation(viewRow(slot));
+            operations++;
+        }
+        if (operations > 0) {
+            executeBatch(batch);
+        }
+        store.dirty.clear();
+        logger.info("Flushed {} group(s) and {} item contribution(s) of view [{}]", dirtySlots, contributions, viewName);
+    }
+
+    private void writeContributions() {
+        if (dirtyContributions.isEmpty()) {
+            return;
+        }
+        List<CosmosItemOperation> operations = new ArrayList<>(dirtyContributions.size());
+        for (Map.Entry<String, ItemContribution> contribution : dirtyContributions.entrySet()) {
+            String rid = contribution.getKey();
+            operations.add(CosmosBulkOperations.getUpsertItemOperation(
+                contributionRow(rid, contribution.getValue()), contributionPartitionKey(rid)));
+        }
+        // Contributions need no atomicity with the view rows: until they are written they stay in memory
+        viewContainer.executeBulkOperations(Flux.fromIterable(operations))
+            .doOnNext(response -> {
+                if (response.getException() != null
+                    || response.getResponse() == null
+                    || !response.getResponse().isSuccessStatusCode()) {
+                    throw new IllegalStateException(String.format(
+                        "Writing contributions of view [%s] failed with status code [%s]",
+                        viewName,
+                        response.getResponse() == null ? "none" : response.getResponse().getStatusCode()),
+                        response.getException());
+                }
+            })
+            .blockLast();
+        cachedContributions.putAll(dirtyContributions);
+        dirtyContributions.clear();
+    }
+
+    private void executeBatch(CosmosBatch batch) {
+        CosmosBatchResponse response = viewContainer.executeCosmosBatch(batch).block();
+        if (response == null || !response.isSuccessStatusCode()) {
+            // Failing the handler keeps the lease where it is, so the same changes are delivered again
+            throw new IllegalStateException(String.format(
+                "Flushing view [%s] failed with status code [%s]",
+                viewName,
+                response == null ? "none" : response.getStatusCode()));
+        }
+    }
+
+    private ObjectNode viewRow(int slot) {
+        ObjectNode row = OBJECT_MAPPER.createObjectNode();
+        row.put("id", rowId(store.keys[slot]));
+        row.put(VIEW_PARTITION_KEY_FIELD, viewName);
+        row.put("group", store.keys[slot]);
+        row.put("count", store.counts[slot]);
+        if (aggregate == Aggregate.SUM) {
+            row.put("sum", store.sums[slot]);
+        }
+        return row;
+    }
+
+    private ObjectNode contributionRow(String rid, ItemContribution contribution) {
+        ObjectNode row = OBJECT_MAPPER.createObjectNode();
+        row.put("id", contributionId(rid));
+        row.put(VIEW_PARTITION_KEY_FIELD, viewName + ":" + contributionId(rid));
+        row.put(CONTRIBUTION_OF_FIELD, viewName);
+        row.put("rid", rid);
+        row.put("group", contribution.group);
+        row.put("value", contribution.value);
+        row.put("ts", contribution.ts);
+        row.put("etag", contribution.etag);
+        row.put("lsn", contribution.lsn);
+        return row;
+    }
+
+    private String projectionQuery() {
+        StringBuilder query = new StringBuilder("SELECT c._rid, c._ts, c._etag, ")
+            .append(toSqlPath(groupByPath)).append(" AS g");
+        if (aggregate == Aggregate.SUM) {
+            query.append(", ").append(toSqlPath(valuePath)).append(" AS v");
+        }
+        return query.append(" FROM c").toString();
+    }
+
+    private static String toSqlPath(String jsonPath) {
+        StringBuilder sqlPath = new StringBuilder("c");
+        for (String segment : jsonPath.split("/")) {
+            if (!segment.isEmpty()) {
+                sqlPath.append("[\"").append(segment.replace("\"", "\\\"")).append("\"]");
+            }
+        }
+        return sqlPath.toString();
+    }
+
+    private PartitionKey contributionPartitionKey(String rid) {
+        return new PartitionKey(viewName + ":" + contributionId(rid));
+    }
+
+    private static String contributionId(String rid) {
+        // _rid is base64, whose '/' is not allowed in ids
+        return "c_" + rid.replace('/', '_');
+    }
+
+    private static String rowId(String groupKey) {
+        // '/', '\', '?' and '#' are not allowed in ids
+        return "g_" + groupKey.replaceAll("[/\\\\?#]", "_");
+    }
+
+    private enum Order {
+        OLDER,
+        SAME,
+        NEWER,
+        UNKNOWN
+    }
+
+    private static final class ItemContribution {
+        // Null when the item has no group and does not count
+        private final String group;
+        private final double value;
+        private final long ts;
+        private final String etag;
+        // 0 when the version came from the projection, as queries do not return _lsn
+        private final long lsn;
+
+        private ItemContribution(String group, double value, long ts, String etag, long lsn) {
+            this.group = group;
+            this.value = value;
+            this.ts = ts;
+            this.etag = etag;
+            this.lsn = lsn;
+        }
+
+        private static ItemContribution fromJson(JsonNode row) {
+            return new ItemContribution(
+                row.hasNonNull("group") ? row.get("group").asText() : null,
+                row.path("value").asDouble(0),
+                row.path("ts").asLong(0),
+                row.hasNonNull("etag") ? row.get("etag").asText() : null,
+                row.path("lsn").asLong(0));
+        }
+
+        /**
+         * Order of another version of the item relative to this one: by _etag for the same version, by _lsn when
+         * both are known, else by _ts. Versions written within the same second share a _ts, so without both _lsn
+         * their order is unknown.
+         */
+        private Order orderOf(long otherTs, String otherEtag, long otherLsn) {
+            if (etag != null && etag.equals(otherEtag)) {
+                return Order.SAME;
+            }
+            if (lsn > 0 && otherLsn > 0) {
+                return otherLsn > lsn ? Order.NEWER : Order.OLDER;
+            }
+            if (otherTs != ts) {
+                return otherTs > ts ? Order.NEWER : Order.OLDER;
+            }
+            return Order.UNKNOWN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ItemContribution)) {
+                return false;
+            }
+            ItemContribution other = (ItemContribution) o;
+            return Objects.equals(group, other.group) && value == other.value && Objects.equals(etag, other.etag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(group, value, etag);
+        }
+    }
+
+    /**
+     * Group keys are interned to dense int slots once; counts and sums live in primitive arrays indexed by slot,
+     * so applying a change does not allocate.
+     */
+    private static final class GroupStore {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private String[] keys = new String[16];
+        private long[] counts = new long[16];
+        private double[] sums = new double[16];
+        private final BitSet dirty = new BitSet();
+
+        private int slotOf(String key) {
+            Integer slot = slots.get(key);
+            return slot == null ? -1 : slot;
+        }
+
+        private int slotFor(String key) {
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                return slot;
+            }
+            int newSlot = slots.size();
+            if (newSlot == keys.length) {
+                keys = Arrays.copyOf(keys, newSlot * 2);
+                counts = Arrays.copyOf(counts, newSlot * 2);
+                sums = Arrays.copyOf(sums, newSlot * 2);
+            }
+            keys[newSlot] = key;
+            slots.put(key, newSlot);
+            return newSlot;
+        }
+
+        private void add(int slot, long count, double sum) {
+            counts[slot] += count;
+            sums[slot] += sum;
+            dirty.set(slot);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+package com.azure.cosmos.examples.changefeed;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.ChangeFeedProcessorOptions;
+import com.azure.cosmos.models.CosmosContainerProperties;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.ThroughputProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static com.azure.cosmos.examples.changefeed.SampleChangeFeedProcessor.createNewCollection;
+import static com.azure.cosmos.examples.changefeed.SampleChangeFeedProcessor.createNewDatabase;
+import static com.azure.cosmos.examples.changefeed.SampleChangeFeedProcessor.createNewLeaseCollection;
+import static com.azure.cosmos.examples.changefeed.SampleChangeFeedProcessor.deleteDatabase;
+import static com.azure.cosmos.examples.changefeed.SampleChangeFeedProcessor.getCosmosClient;
+
+/**
+ * Sample for a Change Feed driven materialized view.
+ * Instead of answering "how many families per district" with a COUNT / GROUP BY query that scans the feed container
+ * on every dashboard refresh, a {@link MaterializedViewEngine} keeps the counts up to date from the Change Feed and
+ * writes them to a small view container, where they can be read with a single-partition query.
+ */
+public class SampleChangeFeedMaterializedView {
+
+    public static final String DATABASE_NAME = "db_" + UUID.randomUUID();
+    public static final String COLLECTION_NAME = "coll_" + UUID.randomUUID();
+    public static final String VIEW_NAME = "familiesPerDistrict";
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+    private static final String[] DISTRICTS = {"WA5", "NY23", "SEA1"};
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedMaterializedView.class);
+
+    public static void main(String[] args) {
+        logger.info("Begin Sample");
+        try {
+            logger.info("Create CosmosClient");
+            CosmosAsyncClient client = getCosmosClient();
+
+            logger.info("Create sample's database: " + DATABASE_NAME);
+            CosmosAsyncDatabase cosmosDatabase = createNewDatabase(client, DATABASE_NAME);
+
+            logger.info("Create container for documents: " + COLLECTION_NAME);
+            CosmosAsyncContainer feedContainer = createNewCollection(client, DATABASE_NAME, COLLECTION_NAME);
+
+            logger.info("Create container for lease: " + COLLECTION_NAME + "-leases");
+            CosmosAsyncContainer leaseContainer = createNewLeaseCollection(client, DATABASE_NAME, COLLECTION_NAME + "-leases");
+
+            logger.info("Create container for views: " + COLLECTION_NAME + "-views");
+            CosmosAsyncContainer viewContainer = createNewViewCollection(cosmosDatabase, COLLECTION_NAME + "-views");
+
+            // Documents written before the engine starts are picked up by its initial projection
+            createNewFamilyDocuments(feedContainer, 30);
+
+            // <StartMaterializedView>
+            ChangeFeedProcessorOptions options = new ChangeFeedProcessorOptions();
+            options.setLeasePrefix(VIEW_NAME);
+
+            MaterializedViewEngine engine = new MaterializedViewEngine(
+                VIEW_NAME,
+                feedContainer,
+                leaseContainer,
+                viewContainer,
+                "/district",
+                MaterializedViewEngine.Aggregate.COUNT,
+                null);
+            engine.start("SampleHost_1", options)
+                  .subscribeOn(Schedulers.boundedElastic())
+                  .block();
+            // </StartMaterializedView>
+
+            // Documents written afterwards arrive through the Change Feed
+            createNewFamilyDocuments(feedContainer, 30);
+            Thread.sleep(Duration.ofSeconds(10).toMillis());
+
+            for (String district : DISTRICTS) {
+                logger.info("In memory: district [{}] has [{}] families", district, engine.get(district));
+            }
+
+            // <ReadMaterializedView>
+            viewContainer
+                .queryItems("SELECT * FROM c", new CosmosQueryRequestOptions().setPartitionKey(new PartitionKey(VIEW_NAME)), JsonNode.class)
+                .byPage()
+                .toIterable()
+                .forEach(page -> {
+                    for (JsonNode row : page.getResults()) {
+                        logger.info("View row: {}", row);
+                    }
+                    logger.info("Reading the view cost [{}] RU", page.getRequestCharge());
+                });
+            // </ReadMaterializedView>
+
+            engine.stop().block();
+
+            logger.info("Delete sample's database: " + DATABASE_NAME);
+            deleteDatabase(cosmosDatabase);
+
+            Thread.sleep(500);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        logger.info("End Sample");
+    }
+
+    public static CosmosAsyncContainer createNewViewCollection(CosmosAsyncDatabase database, String viewCollectionName) {
+        CosmosContainerProperties containerSettings = new CosmosContainerProperties(viewCollectionName, "/view");
+        database.createContainerIfNotExists(containerSettings, ThroughputProperties.createManualThroughput(400)).block();
+        return database.getContainer(viewCollectionName);
+    }
+
+    public static void createNewFamilyDocuments(CosmosAsyncContainer containerClient, int count) {
+        Flux.range(0, count)
+            .map(i -> {
+                ObjectNode document = OBJECT_MAPPER.createObjectNode();
+                String id = UUID.randomUUID().toString();
+                document.put("id", id);
+                document.put("pk", id);
+                document.put("district", DISTRICTS[i % DISTRICTS.length]);
+                return document;
+            })
+            .flatMap(containerClient::createItem, 10)
+            .blockLast();
+        logger.info("Created {} family documents", count);
+    }
+}
@@ -57,6 +57,9 @@ public class SampleChangeFeedProcessorForAllVersionsAndDeletesMode {
     private static ChangeFeedProcessorOptions options;
     private static List<CustomPOJO2> documentList = new ArrayList<>();
 
+    //  Optional: collapse intermediate versions of the same item within a batch, set to null to see every version
+    private static ChangeFeedCompactor<ChangeFeedProcessorItem> compactor = ChangeFeedCompactor.forProcessorItems("/pk");
+
 
     public static void main(String[] args) {
         logger.info("BEGIN Sample");
@@ -152,7 +155,13 @@ public class SampleChangeFeedProcessorForAllVersionsAndDeletesMode {
                 .handleAllVersionsAndDeletesChanges((List<ChangeFeedProcessorItem> changeFeedProcessorItems) -> {
                     logger.info("--->handleAllVersionsAndDeletesChanges() START");
 
-                    for (ChangeFeedProcessorItem item : changeFeedProcessorItems) {
+                    List<ChangeFeedProcessorItem> items = changeFeedProcessorItems;
+                    if (compactor != null) {
+                        items = compactor.compact(changeFeedProcessorItems);
+                        logger.info("---->COMPACTED {} item(s) to {}", changeFeedProcessorItems.size(), items.size());
+                    }
+
+                    for (ChangeFeedProcessorItem item : items) {
                         try {
                             // AllVersionsAndDeletes Change Feed hands the document to you in the form of ChangeFeedProcessorItem
                             // As a developer you have two options for handling the ChangeFeedProcessorItem provided to you by Change Feed
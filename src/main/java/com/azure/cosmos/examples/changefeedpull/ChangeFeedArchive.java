@@ -0,0 +1,291 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedArchive class is an attempt to provide guidance for archiving the Change Feed
+  to local, compressed segment files so history can be replayed without re-reading the feed
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.examples.common.Compress;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Appends Change Feed pages to rolling, GZIP compressed, time-partitioned segment files and replays them.
+ * <p>
+ * Each segment holds one JSON document per line. A new segment is started when the segment's time window has
+ * passed or the documents written to the segment have reached its size limit. The limit applies to the documents
+ * before compression: those bytes are counted as they are written, whereas the compressed file only grows when the
+ * compressor flushes, so its size would lag behind and let segments overshoot.
+ * <p>
+ * A small index file next to the segments records, per segment, the range of _ts values it contains and, per feed
+ * range, the continuation token of the last archived page, so archiving resumes where it stopped and a replay only
+ * opens the segments overlapping its window.
+ * <p>
+ * Segments are flushed before the continuation is recorded in the index, so a crash in between archives the last
+ * page twice on resume rather than losing it.
+ */
+public class ChangeFeedArchive implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedArchive.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String INDEX_FILE_NAME = "index.json";
+    private static final byte NEW_LINE = '\n';
+
+    private final Path directory;
+    private final long segmentWindowMillis;
+    private final long maxSegmentBytes;
+    private final ArchiveIndex index;
+
+    private SegmentInfo openSegment;
+    private OutputStream openSegmentStream;
+    private CountingOutputStream openSegmentCounter;
+
+    /**
+     * @param maxSegmentBytes size of the documents, before compression, after which a new segment is started
+     */
+    public ChangeFeedArchive(Path directory, Duration segmentWindow, long maxSegmentBytes) {
+        this.directory = directory;
+        this.segmentWindowMillis = segmentWindow.toMillis();
+        this.maxSegmentBytes = maxSegmentBytes;
+        try {
+            Files.createDirectories(directory);
+            Path indexFile = directory.resolve(INDEX_FILE_NAME);
+            this.index = Files.exists(indexFile)
+                ? OBJECT_MAPPER.readValue(indexFile.toFile(), ArchiveIndex.class)
+                : new ArchiveIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Pulls the Change Feed of one feed range into the archive, starting from the continuation recorded in the
+     * index or from the beginning. Stops after {@code maxPages} pages or once the feed range is drained.
+     *
+     * @return number of documents archived
+     */
+    public synchronized long archive(CosmosAsyncContainer container, FeedRange feedRange, int maxPages) {
+        String rangeKey = feedRange.toString();
+        String continuation = index.continuations.get(rangeKey);
+
+        // <ArchivePullLoop>
+        CosmosChangeFeedRequestOptions options = continuation == null
+            ? CosmosChangeFeedRequestOptions.createForProcessingFromBeginning(feedRange)
+            : CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation);
+
+        Iterator<FeedResponse<JsonNode>> responseIterator = container
+            .queryChangeFeed(options, JsonNode.class)
+            .byPage()
+            .toIterable()
+            .iterator();
+
+        long archived = 0;
+        int pages = 0;
+        while (responseIterator.hasNext() && pages < maxPages) {
+            FeedResponse<JsonNode> response = responseIterator.next();
+            List<JsonNode> results = response.getResults();
+
+            // the continuation is only recorded once the page is on disk
+            append(rangeKey, response.getContinuationToken(), results);
+            archived += results.size();
+            pages++;
+
+            if (results.isEmpty()) {
+                // caught up with the feed range
+                break;
+            }
+        }
+        // </ArchivePullLoop>
+
+        logger.info("Archived {} document(s) in {} page(s) for feed range {}", archived, pages, rangeKey);
+        return archived;
+    }
+
+    /**
+     * Appends one page of Change Feed documents and records the page's continuation for its feed range.
+     */
+    public synchronized void append(String rangeKey, String continuation, List<JsonNode> documents) {
+        try {
+            long now = System.currentTimeMillis();
+            for (JsonNode document : documents) {
+                rollIfNeeded(now);
+                long ts = document.path("_ts").asLong(now / 1000);
+                openSegmentStream.write(OBJECT_MAPPER.writeValueAsBytes(document));
+                openSegmentStream.write(NEW_LINE);
+                openSegment.minTs = Math.min(openSegment.minTs, ts);
+                openSegment.maxTs = Math.max(openSegment.maxTs, ts);
+                openSegment.events++;
+            }
+            if (openSegmentStream != null) {
+                openSegmentStream.flush();
+            }
+            index.continuations.put(rangeKey, continuation);
+            saveIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replays all archived documents whose _ts falls within [from, to] into the handler, in archive order.
+     *
+     * @return number of documents replayed
+     */
+    public long replay(Instant from, Instant to, Consumer<JsonNode> handler) {
+        long fromTs = from.getEpochSecond();
+        long toTs = to.getEpochSecond();
+        List<SegmentInfo> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(index.segments);
+        }
+
+        long replayed = 0;
+        for (SegmentInfo segment : segments) {
+            if (segment.events == 0 || segment.maxTs < fromTs || segment.minTs > toTs) {
+                continue;
+            }
+            replayed += replaySegment(directory.resolve(segment.file), fromTs, toTs, handler);
+        }
+        return replayed;
+    }
+
+    public synchronized String getContinuation(FeedRange feedRange) {
+        return index.continuations.get(feedRange.toString());
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeOpenSegment();
+            saveIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long replaySegment(Path segmentFile, long fromTs, long toTs, Consumer<JsonNode> handler) {
+        long replayed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            Compress.decompressing(Files.newInputStream(segmentFile)), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode document = OBJECT_MAPPER.readTree(line);
+                long ts = document.path("_ts").asLong();
+                if (ts >= fromTs && ts <= toTs) {
+                    handler.accept(document);
+                    replayed++;
+                }
+            }
+        } catch (EOFException e) {
+            // The segment is still open or was not closed cleanly; everything flushed before this point was read
+            logger.debug("Reached the end of unfinished segment {}", segmentFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return replayed;
+    }
+
+    private void rollIfNeeded(long now) throws IOException {
+        if (openSegment != null
+            && now < openSegment.windowStart + segmentWindowMillis
+            && openSegmentCounter.getCount() < maxSegmentBytes) {
+            return;
+        }
+        closeOpenSegment();
+
+        SegmentInfo segment = new SegmentInfo();
+        segment.windowStart = now - now % segmentWindowMillis;
+        segment.file = String.format("segment-%d-%05d.jsonl.gz", segment.windowStart, index.segments.size());
+        openSegmentCounter = new CountingOutputStream(
+            Compress.compressing(Files.newOutputStream(directory.resolve(segment.file))));
+        openSegmentStream = openSegmentCounter;
+        openSegment = segment;
+        index.segments.add(segment);
+        logger.info("Started archive segment {}", segment.file);
+    }
+
+    private void closeOpenSegment() throws IOException {
+        if (openSegmentStream != null) {
+            openSegmentStream.close();
+            openSegmentStream = null;
+            openSegmentCounter = null;
+            openSegment = null;
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE_NAME);
+        Path tempFile = directory.resolve(INDEX_FILE_NAME + ".tmp");
+        OBJECT_MAPPER.writeValue(tempFile.toFile(), index);
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+
+    public static class ArchiveIndex {
+        public Map<String, String> continuations = new TreeMap<>();
+        public List<SegmentInfo> segments = new ArrayList<>();
+    }
+
+    public static class SegmentInfo {
+        public String file;
+        public long windowStart;
+        public long minTs = Long.MAX_VALUE;
+        public long maxTs = Long.MIN_VALUE;
+        public long events;
+    }
+}
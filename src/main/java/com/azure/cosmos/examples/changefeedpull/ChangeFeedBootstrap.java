@@ -0,0 +1,209 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedBootstrap class is an attempt to provide guidance for starting a new Change Feed consumer
+  from a parallel snapshot of the current state instead of replaying the whole history through one feed
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bootstraps a Change Feed consumer with a parallel point-in-time scan followed by a live Change Feed.
+ * <p>
+ * For every feed range (optionally split further with {@link SubRangeChangeFeedReader#split}) the handoff point is
+ * recorded first: a Change Feed continuation taken "from now", together with the time it was taken. The range is
+ * then scanned with a query for all items with _ts at or after the requested timestamp. Finally, the live Change
+ * Feed is read from the recorded handoff continuation.
+ * <p>
+ * Nothing changed after the handoff point can be missed, because the live feed starts there. Items the scan
+ * returned with a _ts from shortly before the handoff on may have been modified while the scan was running; their
+ * _etag is remembered, so the live feed skips exactly the versions the scan already delivered, and delivers any
+ * other version. The margin before the handoff covers clock skew between this client and the service; with a larger
+ * skew a version may be delivered twice, but never lost. Query results carry _ts and _etag, unlike _lsn, which only
+ * Change Feed results are documented to carry.
+ */
+public class ChangeFeedBootstrap {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedBootstrap.class);
+    private static final long CLOCK_SKEW_MARGIN_SECONDS = 60;
+
+    private final CosmosAsyncContainer container;
+    private final Instant since;
+    private final int subRangesPerFeedRange;
+    private final List<Handoff> handoffs = new ArrayList<>();
+
+    /**
+     * @param since only items last modified at or after this time are part of the snapshot; use
+     * {@link Instant#EPOCH} for all items
+     * @param subRangesPerFeedRange number of parallel scans per physical feed range
+     */
+    public ChangeFeedBootstrap(CosmosAsyncContainer container, Instant since, int subRangesPerFeedRange) {
+        this.container = container;
+        this.since = since;
+        this.subRangesPerFeedRange = subRangesPerFeedRange;
+    }
+
+    /**
+     * Records the handoff point of every range and scans all ranges in parallel, handing the current state to the
+     * handler page by page. The handler is called from several threads at once.
+     *
+     * @return the recorded handoff points, one per range
+     */
+    public synchronized List<Handoff> backfill(Consumer<List<JsonNode>> handler) {
+        List<FeedRange> ranges = new ArrayList<>();
+        for (FeedRange feedRange : container.getFeedRanges().block()) {
+            ranges.addAll(SubRangeChangeFeedReader.split(feedRange, subRangesPerFeedRange));
+        }
+
+        AtomicLong scanned = new AtomicLong();
+        // <ParallelBackfill>
+        List<Handoff> recorded = Flux.fromIterable(ranges)
+            .flatMap(range -> recordHandoff(range)
+                .flatMap(handoff -> scan(handoff, handler, scanned).thenReturn(handoff))
+                .subscribeOn(Schedulers.boundedElastic()), ranges.size())
+            .collectList()
+            .block();
+        // </ParallelBackfill>
+
+        handoffs.clear();
+        handoffs.addAll(recorded);
+        for (Handoff handoff : handoffs) {
+            logger.info("Handoff for range {} recorded at {}, {} item(s) possibly changed during the scan",
+                handoff.feedRange, handoff.recordedAt, handoff.modifiedDuringScan.size());
+        }
+        logger.info("Backfill scanned {} item(s) over {} range(s)", scanned.get(), ranges.size());
+        return Collections.unmodifiableList(new ArrayList<>(handoffs));
+    }
+
+    /**
+     * Reads the live Change Feed of every range from its handoff point until caught up. Can be called repeatedly;
+     * each call continues where the previous one stopped.
+     *
+     * @return number of changes delivered to the handler
+     */
+    public synchronized long catchUp(Consumer<List<JsonNode>> handler) {
+        AtomicLong delivered = new AtomicLong();
+        Flux.fromIterable(handoffs)
+            .flatMap(handoff -> container
+                .queryChangeFeed(CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(handoff.continuation), JsonNode.class)
+                .byPage()
+                .takeUntil(response -> response.getResults().isEmpty())
+                .doOnNext(response -> {
+                    List<JsonNode> changes = withoutScannedVersions(handoff, response.getResults());
+                    if (!changes.isEmpty()) {
+                        handler.accept(changes);
+                        delivered.addAndGet(changes.size());
+                    }
+                    handoff.continuation = response.getContinuationToken();
+                })
+                .doOnComplete(handoff.modifiedDuringScan::clear)
+                .subscribeOn(Schedulers.boundedElastic()), Math.max(1, handoffs.size()))
+            .blockLast();
+        return delivered.get();
+    }
+
+    public synchronized List<Handoff> getHandoffs() {
+        return Collections.unmodifiableList(new ArrayList<>(handoffs));
+    }
+
+    private Mono<Handoff> recordHandoff(FeedRange range) {
+        return Mono.defer(() -> {
+            // Taken before the request, so every change after the handoff point has a _ts at or after it
+            long recordedAt = Instant.now().getEpochSecond();
+            return container
+                .queryChangeFeed(CosmosChangeFeedRequestOptions.createForProcessingFromNow(range), JsonNode.class)
+                .byPage()
+                .next()
+                .map(response -> new Handoff(range.toString(), response.getContinuationToken(), recordedAt));
+        });
+    }
+
+    private Mono<Void> scan(Handoff handoff, Consumer<List<JsonNode>> handler, AtomicLong scanned) {
+        SqlQuerySpec query = new SqlQuerySpec(
+            "SELECT * FROM c WHERE c._ts >= @since",
+            new SqlParameter("@since", since.getEpochSecond()));
+        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions()
+            .setFeedRange(FeedRange.fromString(handoff.feedRange));
+
+        return container
+            .queryItems(query, options, JsonNode.class)
+            .byPage()
+            .doOnNext(page -> {
+                for (JsonNode item : page.getResults()) {
+                    if (item.path("_ts").asLong() >= handoff.recordedAt - CLOCK_SKEW_MARGIN_SECONDS) {
+                        handoff.modifiedDuringScan.put(item.path("_rid").asText(), item.path("_etag").asText());
+                    }
+                }
+                handler.accept(page.getResults());
+                scanned.addAndGet(page.getResults().size());
+            })
+            .then();
+    }
+
+    private static List<JsonNode> withoutScannedVersions(Handoff handoff, List<JsonNode> changes) {
+        if (handoff.modifiedDuringScan.isEmpty()) {
+            return changes;
+        }
+        List<JsonNode> filtered = new ArrayList<>(changes.size());
+        for (JsonNode change : changes) {
+            String scannedEtag = handoff.modifiedDuringScan.get(change.path("_rid").asText());
+            if (scannedEtag == null || !scannedEtag.equals(change.path("_etag").asText())) {
+                filtered.add(change);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Handoff point of one range from the snapshot to the live Change Feed.
+     */
+    public static final class Handoff {
+        private final String feedRange;
+        private final long recordedAt;
+        private volatile String continuation;
+        // _etag by _rid of the items the scan delivered that may also appear on the live feed
+        private final Map<String, String> modifiedDuringScan = new ConcurrentHashMap<>();
+
+        private Handoff(String feedRange, String continuation, long recordedAt) {
+            this.feedRange = feedRange;
+            this.continuation = continuation;
+            this.recordedAt = recordedAt;
+        }
+
+        public String getFeedRange() {
+            return feedRange;
+        }
+
+        /**
+         * Epoch second at which the handoff point was taken.
+         */
+        public long getRecordedAt() {
+            return recordedAt;
+        }
+
+        public String getContinuation() {
+            return continuation;
+        }
+    }
+}
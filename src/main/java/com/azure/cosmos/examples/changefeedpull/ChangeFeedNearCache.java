@@ -0,0 +1,296 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedNearCache class is an attempt to provide guidance for caching point reads in memory
+  and keeping the cache coherent with the Change Feed instead of short expiration times
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through, size-bounded in-memory cache in front of {@link CosmosAsyncContainer#readItem}, kept coherent by a
+ * background Change Feed pull loop.
+ * <p>
+ * The loop ({@link ChangeFeedPoller}) starts "from now" when the cache starts and polls the whole container. For
+ * each change it sees, the entry of a cached item is replaced with the new version; items that are not cached are
+ * ignored, so the cache only ever holds items that were read. In AllVersionsAndDeletes mode, deletes evict the
+ * entry; in latest version mode deletes are not visible on the Change Feed, so {@code maxEntryAge} bounds how long
+ * a deleted item can still be served.
+ * <p>
+ * A miss inserts a pending entry before reading, so a change arriving while the read is in flight is not lost.
+ * Versions are ordered by _ts (seconds) and told apart by _etag, as point reads do not carry _lsn: a version with a
+ * later _ts wins, and of two Change Feed versions with the same _ts the later delivered wins. When a point read and
+ * a Change Feed version share a _ts but differ in _etag, neither is provably newer and the entry is evicted, so the
+ * next read goes to the container. Staleness is reported as the lag between a change's _ts and the moment it was
+ * applied to the cache. The cache assumes a single, string valued partition key path.
+ */
+public class ChangeFeedNearCache {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedNearCache.class);
+
+    private final CosmosAsyncContainer container;
+    private final String partitionKeyPath;
+    private final int maxEntries;
+    private final Duration maxEntryAge;
+    private final boolean allVersionsAndDeletes;
+    private final Map<String, CacheEntry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong deletes = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    private final AtomicLong changesSeen = new AtomicLong();
+    private volatile long lastStalenessMillis;
+    private volatile long maxStalenessMillis;
+
+    private final ChangeFeedPoller poller;
+
+    /**
+     * @param partitionKeyPath partition key path of the container, such as "/pk"
+     * @param maxEntries entries beyond this are evicted, least recently read first
+     * @param maxEntryAge entries loaded longer ago than this are read again
+     * @param pollInterval delay between Change Feed polls once the feed is drained
+     * @param allVersionsAndDeletes read the Change Feed in AllVersionsAndDeletes mode, so deletes evict entries;
+     * requires continuous backup on the account
+     */
+    public ChangeFeedNearCache(
+        CosmosAsyncContainer container,
+        String partitionKeyPath,
+        int maxEntries,
+        Duration maxEntryAge,
+        Duration pollInterval,
+        boolean allVersionsAndDeletes) {
+
+        this.container = container;
+        this.partitionKeyPath = partitionKeyPath;
+        this.maxEntries = maxEntries;
+        this.maxEntryAge = maxEntryAge;
+        this.allVersionsAndDeletes = allVersionsAndDeletes;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > ChangeFeedNearCache.this.maxEntries) {
+                    capacityEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.poller = new ChangeFeedPoller(container, "Near cache", pollInterval);
+    }
+
+    /**
+     * Starts the Change Feed loop. Reads made before starting are not kept coherent.
+     */
+    public void start() {
+        CosmosChangeFeedRequestOptions options = CosmosChangeFeedRequestOptions.createForProcessingFromNow(FeedRange.forFullRange());
+        poller.start(
+            Mono.just(Collections.singletonList(allVersionsAndDeletes ? options.allVersionsAndDeletes() : options)),
+            (position, changes) -> apply(changes));
+    }
+
+    public void stop() {
+        poller.stop();
+    }
+
+    /**
+     * Returns the cached item, or reads it from the container and caches it.
+     */
+    public Mono<JsonNode> readItem(String id, String partitionKeyValue) {
+        return Mono.defer(() -> readThrough(id, partitionKeyValue));
+    }
+
+    private Mono<JsonNode> readThrough(String id, String partitionKeyValue) {
+        String key = key(id, partitionKeyValue);
+        CacheEntry pending;
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && entry.document != null) {
+                if (System.nanoTime() - entry.loadedAt < maxEntryAge.toNanos()) {
+                    hits.incrementAndGet();
+                    return Mono.just(entry.document);
+                }
+                expired.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            pending = new CacheEntry();
+            entries.put(key, pending);
+        }
+
+        // <ReadThrough>
+        return container
+            .readItem(id, new PartitionKey(partitionKeyValue), JsonNode.class)
+            .map(response -> {
+                JsonNode document = response.getItem();
+                synchronized (entries) {
+                    // The entry may have been evicted meanwhile, or updated from the Change Feed with a newer version
+                    if (entries.get(key) == pending) {
+                        Order order = pending.document == null ? Order.NEWER : compare(document, pending);
+                        if (order == Order.NEWER) {
+                            pending.set(document, false);
+                        } else if (order == Order.UNKNOWN) {
+                            entries.remove(key);
+                        }
+                    }
+                }
+                return document;
+            })
+            .doOnError(error -> {
+                synchronized (entries) {
+                    if (entries.get(key) == pending && pending.document == null) {
+                        entries.remove(key);
+                    }
+                }
+            });
+        // </ReadThrough>
+    }
+
+    public void invalidate(String id, String partitionKeyValue) {
+        synchronized (entries) {
+            entries.remove(key(id, partitionKeyValue));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Lag between the _ts of the most recently applied change and the moment it was applied.
+     */
+    public long getLastStalenessMillis() {
+        return lastStalenessMillis;
+    }
+
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    public void logStatistics() {
+        logger.info("Near cache: {} entries, {} hit(s), {} miss(es) ({} expired), hit ratio {}, "
+                + "{} update(s) and {} delete(s) from {} change(s), {} capacity eviction(s), "
+                + "staleness last {} ms / max {} ms",
+            size(), hits.get(), misses.get(), expired.get(), String.format("%.2f", getHitRatio()),
+            updates.get(), deletes.get(), changesSeen.get(), capacityEvictions.get(),
+            lastStalenessMillis, maxStalenessMillis);
+    }
+
+    private void apply(List<JsonNode> changes) {
+        long now = System.currentTimeMillis();
+        for (JsonNode change : changes) {
+            changesSeen.incrementAndGet();
+            JsonNode document = change;
+            boolean deleted = false;
+            if (allVersionsAndDeletes) {
+                JsonNode current = change.get("current");
+                deleted = "delete".equals(change.path("metadata").path("operationType").asText());
+                document = deleted || current == null || !current.has("id") ? change.get("previous") : current;
+                if (document == null || !document.has("id")) {
+                    continue;
+                }
+            }
+
+            String key = key(document.get("id").asText(), document.at(partitionKeyPath).asText());
+            synchronized (entries) {
+                // Changes to items that are not cached are ignored, only items that were read are kept
+                if (!entries.containsKey(key)) {
+                    continue;
+                }
+                if (deleted) {
+                    entries.remove(key);
+                    deletes.incrementAndGet();
+                } else {
+                    CacheEntry entry = entries.get(key);
+                    Order order = entry.document == null ? Order.NEWER : compare(document, entry);
+                    if (order == Order.UNKNOWN && entry.fromChangeFeed) {
+                        // The Change Feed delivers the versions of an item in order
+                        order = Order.NEWER;
+                    }
+                    if (order == Order.NEWER) {
+                        entry.set(document, true);
+                        updates.incrementAndGet();
+                    } else if (order == Order.UNKNOWN) {
+                        entries.remove(key);
+                    }
+                }
+            }
+
+            long ts = document.path("_ts").asLong(0);
+            if (ts > 0) {
+                long staleness = Math.max(0, now - ts * 1000);
+                lastStalenessMillis = staleness;
+                maxStalenessMillis = Math.max(maxStalenessMillis, staleness);
+            }
+        }
+    }
+
+    private static Order compare(JsonNode document, CacheEntry entry) {
+        if (document.path("_etag").asText().equals(entry.etag)) {
+            return Order.SAME;
+        }
+        long ts = document.path("_ts").asLong();
+        if (ts != entry.ts) {
+            return ts > entry.ts ? Order.NEWER : Order.OLDER;
+        }
+        return Order.UNKNOWN;
+    }
+
+    private static String key(String id, String partitionKeyValue) {
+        return id + "|" + partitionKeyValue;
+    }
+
+    private enum Order {
+        OLDER,
+        SAME,
+        NEWER,
+        UNKNOWN
+    }
+
+    private static final class CacheEntry {
+        private JsonNode document;
+        private long ts;
+        private String etag;
+        private boolean fromChangeFeed;
+        private long loadedAt;
+
+        private void set(JsonNode document, boolean fromChangeFeed) {
+            this.document = document;
+            this.ts = document.path("_ts").asLong();
+            this.etag = document.path("_etag").asText();
+            this.fromChangeFeed = fromChangeFeed;
+            this.loadedAt = System.nanoTime();
+        }
+    }
+}
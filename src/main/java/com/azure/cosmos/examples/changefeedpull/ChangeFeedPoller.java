@@ -0,0 +1,106 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedPoller class is an attempt to provide guidance for polling the Change Feed in the background
+  without blocking a thread, for caches and filters kept current from it
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Polls one or more Change Feed positions in a background loop, driven entirely by the reactive pipeline.
+ * <p>
+ * Each poll drains every position in turn, page by page, until a page comes back empty, then waits
+ * {@code pollInterval} before the next poll. The handler gets every page, the empty last one included, and a
+ * position only advances to the continuation of a page once the handler has returned, so a failed poll is retried
+ * from the last page handled. Nothing in the loop blocks, so it does not need a thread of its own; a blocking
+ * iterator ({@code toIterable()}) on a {@code Schedulers.newSingle} thread would fail on every poll, as those
+ * threads are marked non-blocking. The handler runs on an SDK thread and must not block either.
+ */
+public class ChangeFeedPoller {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedPoller.class);
+
+    private final CosmosAsyncContainer container;
+    private final String description;
+    private final Duration pollInterval;
+    private Disposable loop;
+
+    /**
+     * @param description name of the consumer, for logging
+     * @param pollInterval delay between polls once every position is drained
+     */
+    public ChangeFeedPoller(CosmosAsyncContainer container, String description, Duration pollInterval) {
+        this.container = container;
+        this.description = description;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Starts polling from {@code startPositions}, which is retried until it succeeds.
+     *
+     * @param handler called with the index of the position and the changes of each page
+     */
+    public synchronized void start(Mono<List<CosmosChangeFeedRequestOptions>> startPositions,
+                                   BiConsumer<Integer, List<JsonNode>> handler) {
+        if (loop != null) {
+            throw new IllegalStateException(description + " Change Feed polling is already started.");
+        }
+        loop = startPositions
+            .doOnError(e -> logger.warn("{} Change Feed start position unavailable, will retry", description, e))
+            .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, pollInterval))
+            .flatMapMany(initial -> {
+                CosmosChangeFeedRequestOptions[] positions = initial.toArray(new CosmosChangeFeedRequestOptions[0]);
+                return Flux.range(0, positions.length)
+                    .concatMap(index -> drain(positions, index, handler))
+                    .then(Mono.delay(pollInterval))
+                    .repeat();
+            })
+            .subscribe(
+                null,
+                e -> logger.error("{} Change Feed polling stopped", description, e));
+    }
+
+    public synchronized void stop() {
+        if (loop != null) {
+            loop.dispose();
+            loop = null;
+        }
+    }
+
+    // <ChangeFeedPoll>
+    private Mono<Void> drain(CosmosChangeFeedRequestOptions[] positions, int index,
+                             BiConsumer<Integer, List<JsonNode>> handler) {
+        return Flux
+            .defer(() -> container.queryChangeFeed(positions[index], JsonNode.class).byPage())
+            .doOnNext(response -> {
+                handler.accept(index, response.getResults());
+
+                // applying the continuation token
+                // only after processing all events
+                positions[index] = CosmosChangeFeedRequestOptions
+                    .createForProcessingFromContinuation(response.getContinuationToken());
+            })
+            .takeUntil(response -> response.getResults().isEmpty())
+            .then()
+            .onErrorResume(e -> {
+                // The next poll resumes from the last handled continuation
+                logger.warn("{} Change Feed poll failed, will retry", description, e);
+                return Mono.empty();
+            });
+    }
+    // </ChangeFeedPoll>
+}
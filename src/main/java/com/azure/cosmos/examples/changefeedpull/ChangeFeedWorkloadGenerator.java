@@ -0,0 +1,265 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ChangeFeedWorkloadGenerator class is an attempt to provide guidance for generating a high volume,
+  interleaved insert / update / delete workload to benchmark Change Feed consumers against
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosBulkExecutionOptions;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemOperationType;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates an interleaved stream of inserts, updates and deletes at a target rate and sends it through bulk
+ * execution.
+ * <p>
+ * Per partition, the generator only keeps the sequence numbers of live documents in a growable long[]; ids and
+ * bodies are derived from (partition, sequence) when an operation is generated. Picking a random live document
+ * and removing it (swap with the last element) are O(1), so the generator keeps up with millions of documents.
+ * A document only becomes eligible for updates and deletes after its create has succeeded.
+ */
+public class ChangeFeedWorkloadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeedWorkloadGenerator.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private final CosmosAsyncContainer container;
+    private final String partitionKeyFieldName;
+    private final PartitionState[] partitions;
+    private final int insertPercent;
+    private final int updatePercent;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    /**
+     * @param insertPercent share of generated operations that are inserts
+     * @param updatePercent share of generated operations that are updates; the rest are deletes
+     */
+    public ChangeFeedWorkloadGenerator(
+        CosmosAsyncContainer container,
+        String partitionKeyFieldName,
+        int partitionCount,
+        int insertPercent,
+        int updatePercent) {
+
+        if (insertPercent < 0 || updatePercent < 0 || insertPercent + updatePercent > 100) {
+            throw new IllegalArgumentException("Insert and update percentages must add up to at most 100.");
+        }
+        this.container = container;
+        this.partitionKeyFieldName = partitionKeyFieldName;
+        this.insertPercent = insertPercent;
+        this.updatePercent = updatePercent;
+        this.partitions = new PartitionState[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new PartitionState(UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Inserts {@code documentsPerPartition} documents into every partition through bulk execution.
+     */
+    public void seed(int documentsPerPartition) {
+        Flux<CosmosItemOperation> operations = Flux
+            .range(0, partitions.length * documentsPerPartition)
+            .map(i -> insertOperation(i % partitions.length));
+        execute(operations).blockLast();
+        logger.info("Seeded {} document(s), {} failed", succeeded.get(), failed.get());
+    }
+
+    /**
+     * Runs the interleaved workload at roughly {@code operationsPerSecond} for {@code duration}.
+     */
+    public void run(int operationsPerSecond, Duration duration) {
+        long ticks = duration.toMillis() / TICK.toMillis();
+        double operationsPerTick = operationsPerSecond * TICK.toMillis() / 1000.0;
+        long start = System.nanoTime();
+
+        // Carry the fractional part from tick to tick so low rates are not rounded down to zero
+        double[] owed = new double[1];
+        Flux<CosmosItemOperation> operations = Flux
+            .interval(TICK)
+            .take(ticks)
+            .onBackpressureDrop(tick -> logger.warn("Generator fell behind, dropped tick {}", tick))
+            .concatMapIterable(tick -> {
+                owed[0] += operationsPerTick;
+                int count = (int) owed[0];
+                owed[0] -= count;
+                List<CosmosItemOperation> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(nextOperation());
+                }
+                return batch;
+            });
+
+        execute(operations).blockLast();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info("Workload done: {} succeeded, {} failed ({} on documents changed concurrently), {} ops/s",
+            succeeded.get(), failed.get(), conflicts.get(), (long) (succeeded.get() / seconds));
+    }
+
+    public long getLiveDocumentCount() {
+        long count = 0;
+        for (PartitionState partition : partitions) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private CosmosItemOperation nextOperation() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int partitionIndex = random.nextInt(partitions.length);
+        PartitionState partition = partitions[partitionIndex];
+        int roll = random.nextInt(100);
+
+        if (roll < insertPercent) {
+            return insertOperation(partitionIndex);
+        }
+        if (roll < insertPercent + updatePercent) {
+            long seq = partition.pick(random);
+            if (seq >= 0) {
+                ObjectNode document = document(partitionIndex, seq);
+                return CosmosBulkOperations.getReplaceItemOperation(
+                    document.get("id").asText(), document, partition.partitionKey,
+                    new OperationContext(partitionIndex, seq));
+            }
+        } else {
+            // Removed at generation time so no further updates or deletes are generated for it
+            long seq = partition.pickAndRemove(random);
+            if (seq >= 0) {
+                return CosmosBulkOperations.getDeleteItemOperation(
+                    id(partition, seq), partition.partitionKey, new OperationContext(partitionIndex, seq));
+            }
+        }
+        // Nothing live to update or delete in this partition yet
+        return insertOperation(partitionIndex);
+    }
+
+    private CosmosItemOperation insertOperation(int partitionIndex) {
+        PartitionState partition = partitions[partitionIndex];
+        long seq = partition.nextSequence++;
+        return CosmosBulkOperations.getCreateItemOperation(
+            document(partitionIndex, seq), partition.partitionKey, new OperationContext(partitionIndex, seq));
+    }
+
+    private Flux<CosmosBulkOperationResponse<OperationContext>> execute(Flux<CosmosItemOperation> operations) {
+        return container
+            .<OperationContext>executeBulkOperations(operations, new CosmosBulkExecutionOptions())
+            .doOnNext(this::recordResponse);
+    }
+
+    private void recordResponse(CosmosBulkOperationResponse<OperationContext> response) {
+        CosmosItemOperation operation = response.getOperation();
+        boolean success = response.getException() == null
+            && response.getResponse() != null
+            && response.getResponse().isSuccessStatusCode();
+
+        if (success) {
+            succeeded.incrementAndGet();
+            if (operation.getOperationType() == CosmosItemOperationType.CREATE) {
+                OperationContext context = operation.getContext();
+                partitions[context.partitionIndex].add(context.sequence);
+            }
+        } else {
+            failed.incrementAndGet();
+            int statusCode = response.getResponse() != null ? response.getResponse().getStatusCode() : 0;
+            if (statusCode == 404 || statusCode == 409) {
+                conflicts.incrementAndGet();
+            }
+        }
+    }
+
+    private ObjectNode document(int partitionIndex, long seq) {
+        PartitionState partition = partitions[partitionIndex];
+        ObjectNode document = OBJECT_MAPPER.createObjectNode();
+        document.put("id", id(partition, seq));
+        document.put(partitionKeyFieldName, partition.partitionKeyValue);
+        document.put("prop", UUID.randomUUID().toString());
+        return document;
+    }
+
+    private static String id(PartitionState partition, long seq) {
+        return partition.partitionKeyValue + "-" + seq;
+    }
+
+    private static final class OperationContext {
+        private final int partitionIndex;
+        private final long sequence;
+
+        private OperationContext(int partitionIndex, long sequence) {
+            this.partitionIndex = partitionIndex;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Live document sequence numbers of one partition. Generation and bulk completions run on different threads,
+     * so access is synchronized; every operation is O(1).
+     */
+    private static final class PartitionState {
+        private final String partitionKeyValue;
+        private final PartitionKey partitionKey;
+        private long[] live = new long[64];
+        private int size;
+        private long nextSequence;
+
+        private PartitionState(String partitionKeyValue) {
+            this.partitionKeyValue = partitionKeyValue;
+            this.partitionKey = new PartitionKey(partitionKeyValue);
+        }
+
+        private synchronized void add(long seq) {
+            if (size == live.length) {
+                live = Arrays.copyOf(live, size * 2);
+            }
+            live[size++] = seq;
+        }
+
+        private synchronized long pick(ThreadLocalRandom random) {
+            return size == 0 ? -1 : live[random.nextInt(size)];
+        }
+
+        private synchronized long pickAndRemove(ThreadLocalRandom random) {
+            if (size == 0) {
+                return -1;
+            }
+            int index = random.nextInt(size);
+            long seq = live[index];
+            live[index] = live[--size];
+            return seq;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ExactlyOnceProjection class is an attempt to provide guidance for projecting the Change Feed
+  into a target container so that derived writes are applied exactly once, by committing them
+  together with the projection checkpoint in one transactional batch
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosBatchResponse;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Projects the Change Feed of one feed range of a source container into a target container with exactly-once
+ * effect.
+ * <p>
+ * Every target partition touched by the projection holds one checkpoint document per (projection, feed range).
+ * Derived writes for a target partition are committed in a {@link CosmosBatch} together with an update of that
+ * partition's checkpoint, which records the highest source _lsn applied there and is guarded by its ETag so only
+ * one worker can advance it. The batch that completes a page also records the page's continuation token.
+ * <p>
+ * On restart the checkpoints of the feed range are loaded with a single query, the pull loop resumes from the
+ * newest recorded continuation, and derived writes whose source _lsn is not above their partition's checkpoint are
+ * skipped, because they were already committed. No per-write dedupe read is needed.
+ * <p>
+ * A source document's derived writes to one target partition must fit one batch next to the checkpoint, so at
+ * most 99 of them. A source document deriving more is rejected before anything of its page is committed, as
+ * splitting it over batches would lose the exactly-once guarantee.
+ */
+public class ExactlyOnceProjection {
+    private static final Logger logger = LoggerFactory.getLogger(ExactlyOnceProjection.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // One operation of each transactional batch is reserved for the checkpoint
+    private static final int MAX_PROJECTED_OPERATIONS_PER_BATCH = 99;
+    private static final String CHECKPOINT_TYPE = "projectionCheckpoint";
+
+    private final String projectionName;
+    private final CosmosAsyncContainer sourceContainer;
+    private final CosmosAsyncContainer targetContainer;
+    private final String targetPartitionKeyField;
+    private final Function<JsonNode, List<ObjectNode>> projection;
+
+    /**
+     * @param projectionName name of the projection, part of the checkpoint ids
+     * @param sourceContainer container whose Change Feed is projected
+     * @param targetContainer container receiving the derived documents and checkpoints
+     * @param targetPartitionKeyField top level field holding the target container's partition key (string valued)
+     * @param projection maps a source document to the derived documents to upsert; may return an empty list, and
+     * at most 99 documents per target partition
+     */
+    public ExactlyOnceProjection(
+        String projectionName,
+        CosmosAsyncContainer sourceContainer,
+        CosmosAsyncContainer targetContainer,
+        String targetPartitionKeyField,
+        Function<JsonNode, List<ObjectNode>> projection) {
+
+        this.projectionName = projectionName;
+        this.sourceContainer = sourceContainer;
+        this.targetContainer = targetContainer;
+        this.targetPartitionKeyField = targetPartitionKeyField;
+        this.projection = projection;
+    }
+
+    /**
+     * Runs the projection for one feed range until it is drained or {@code maxPages} pages have been applied.
+     *
+     * @return number of derived documents written; already committed ones are not counted
+     */
+    public long run(FeedRange feedRange, int maxPages) {
+        String rangeId = UUID.nameUUIDFromBytes(feedRange.toString().getBytes(StandardCharsets.UTF_8)).toString();
+        Map<String, Checkpoint> checkpoints = new HashMap<>();
+        String continuation = loadCheckpoints(rangeId, checkpoints);
+
+        CosmosChangeFeedRequestOptions options = continuation == null
+            ? CosmosChangeFeedRequestOptions.createForProcessingFromBeginning(feedRange)
+            : CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation);
+
+        Iterator<FeedResponse<JsonNode>> responseIterator = sourceContainer
+            .queryChangeFeed(options, JsonNode.class)
+            .byPage()
+            .toIterable()
+            .iterator();
+
+        long written = 0;
+        int pages = 0;
+        while (responseIterator.hasNext() && pages < maxPages) {
+            FeedResponse<JsonNode> response = responseIterator.next();
+            if (response.getResults().isEmpty()) {
+                break;
+            }
+            written += applyPage(rangeId, response.getResults(), response.getContinuationToken(), checkpoints);
+            pages++;
+        }
+        logger.info("Projection [{}] wrote {} document(s) from {} page(s)", projectionName, written, pages);
+        return written;
+    }
+
+    private long applyPage(String rangeId, List<JsonNode> sourceDocuments, String continuation,
+                           Map<String, Checkpoint> checkpoints) {
+        // Derived documents grouped by target partition, then by source document in feed order, so a source
+        // document's derived writes are never split across batches
+        Map<String, List<SourceChange>> changesByPartition = new LinkedHashMap<>();
+        long pageLsn = 0;
+        for (JsonNode source : sourceDocuments) {
+            long lsn = source.path("_lsn").asLong();
+            pageLsn = Math.max(pageLsn, lsn);
+            Map<String, SourceChange> changeByPartition = new HashMap<>();
+            for (ObjectNode derived : projection.apply(source)) {
+                String partitionKey = derived.path(targetPartitionKeyField).asText();
+                changeByPartition
+                    .computeIfAbsent(partitionKey, pk -> {
+                        SourceChange change = new SourceChange(lsn);
+                        changesByPartition.computeIfAbsent(pk, k -> new ArrayList<>()).add(change);
+                        return change;
+                    })
+                    .documents.add(derived);
+            }
+            for (Map.Entry<String, SourceChange> change : changeByPartition.entrySet()) {
+                if (change.getValue().documents.size() > MAX_PROJECTED_OPERATIONS_PER_BATCH) {
+                    throw new IllegalStateException(String.format(
+                        "Projection [%s] derived %d documents for target partition [%s] from source document [%s]; "
+                            + "at most %d fit in one transactional batch",
+                        projectionName, change.getValue().documents.size(), change.getKey(),
+                        source.path("id").asText(), MAX_PROJECTED_OPERATIONS_PER_BATCH));
+                }
+            }
+        }
+
+        long written = 0;
+        int partitionsLeft = changesByPartition.size();
+        for (Map.Entry<String, List<SourceChange>> entry : changesByPartition.entrySet()) {
+            partitionsLeft--;
+            written += applyPartition(rangeId, entry.getKey(), entry.getValue(),
+                partitionsLeft == 0 ? continuation : null, pageLsn, checkpoints);
+        }
+        if (changesByPartition.isEmpty()) {
+            // Nothing to project, still record progress so the page is not read again after a restart
+            written += applyPartition(rangeId, rangeId, new ArrayList<>(), continuation, pageLsn, checkpoints);
+        }
+        return written;
+    }
+
+    private long applyPartition(String rangeId, String partitionKey, List<SourceChange> changes,
+                                String pageContinuation, long pageLsn, Map<String, Checkpoint> checkpoints) {
+        Checkpoint checkpoint = checkpoints.computeIfAbsent(partitionKey, pk -> new Checkpoint());
+
+        List<SourceChange> pending = new ArrayList<>();
+        for (SourceChange change : changes) {
+            if (change.lsn > checkpoint.lsn) {
+                pending.add(change);
+            }
+        }
+
+        long written = 0;
+        int index = 0;
+        do {
+            CosmosBatch batch = CosmosBatch.createCosmosBatch(new PartitionKey(partitionKey));
+            int operations = 0;
+            long batchLsn = checkpoint.lsn;
+            while (index < pending.size()
+                && (operations == 0 || operations + pending.get(index).documents.size() <= MAX_PROJECTED_OPERATIONS_PER_BATCH)) {
+                SourceChange change = pending.get(index++);
+                for (ObjectNode derived : change.documents) {
+                    batch.upsertItemOperation(derived);
+                }
+                operations += change.documents.size();
+                batchLsn = change.lsn;
+            }
+
+            boolean completesPage = index == pending.size() && pageContinuation != null;
+            if (operations == 0 && !completesPage) {
+                break;
+            }
+            commit(batch, rangeId, partitionKey, checkpoint, batchLsn, completesPage ? pageContinuation : null,
+                completesPage ? pageLsn : checkpoint.continuationLsn);
+            written += operations;
+        } while (index < pending.size());
+        return written;
+    }
+
+    private void commit(CosmosBatch batch, String rangeId, String partitionKey, Checkpoint checkpoint,
+                        long lsn, String continuation, long continuationLsn) {
+        ObjectNode checkpointDocument = OBJECT_MAPPER.createObjectNode();
+        checkpointDocument.put("id", checkpointId(rangeId));
+        checkpointDocument.put(targetPartitionKeyField, partitionKey);
+        checkpointDocument.put("type", CHECKPOINT_TYPE);
+        checkpointDocument.put("projection", projectionName);
+        checkpointDocument.put("rangeId", rangeId);
+        checkpointDocument.put("lsn", lsn);
+        checkpointDocument.put("continuation", continuation != null ? continuation : checkpoint.continuation);
+        checkpointDocument.put("continuationLsn", continuationLsn);
+
+        // The ETag guard makes a second worker on the same feed range fail instead of double applying
+        if (checkpoint.etag == null) {
+            batch.createItemOperation(checkpointDocument);
+        } else {
+            batch.replaceItemOperation(checkpointDocument.get("id").asText(), checkpointDocument,
+                new CosmosBatchItemRequestOptions().setIfMatchETag(checkpoint.etag));
+        }
+
+        CosmosBatchResponse response = targetContainer.executeCosmosBatch(batch).block();
+        if (response == null || !response.isSuccessStatusCode()) {
+            throw new IllegalStateException(String.format(
+                "Projection [%s] failed to commit to partition [%s] with status code [%s]",
+                projectionName, partitionKey, response == null ? "none" : response.getStatusCode()));
+        }
+
+        checkpoint.etag = response.getResults().get(response.size() - 1).getETag();
+        checkpoint.lsn = lsn;
+        checkpoint.continuation = checkpointDocument.get("continuation").asText(null);
+        checkpoint.continuationLsn = continuationLsn;
+    }
+
+    private String loadCheckpoints(String rangeId, Map<String, Checkpoint> checkpoints) {
+        SqlQuerySpec query = new SqlQuerySpec(
+            "SELECT * FROM c WHERE c.type = @type AND c.projection = @projection AND c.rangeId = @rangeId",
+            new SqlParameter("@type", CHECKPOINT_TYPE),
+            new SqlParameter("@projection", projectionName),
+            new SqlParameter("@rangeId", rangeId));
+
+        String continuation = null;
+        long newestContinuationLsn = -1;
+        for (JsonNode document : targetContainer
+            .queryItems(query, new CosmosQueryRequestOptions(), JsonNode.class)
+            .toIterable()) {
+
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.lsn = document.path("lsn").asLong();
+            checkpoint.etag = document.path("_etag").asText();
+            checkpoint.continuation = document.path("continuation").asText(null);
+            checkpoint.continuationLsn = document.path("continuationLsn").asLong();
+            checkpoints.put(document.path(targetPartitionKeyField).asText(), checkpoint);
+
+            if (checkpoint.continuation != null && checkpoint.continuationLsn > newestContinuationLsn) {
+                newestContinuationLsn = checkpoint.continuationLsn;
+                continuation = checkpoint.continuation;
+            }
+        }
+        logger.info("Projection [{}] loaded {} checkpoint(s) for feed range {}", projectionName, checkpoints.size(), rangeId);
+        return continuation;
+    }
+
+    private String checkpointId(String rangeId) {
+        return "_projection-" + projectionName + "-" + rangeId;
+    }
+
+    private static final class SourceChange {
+        private final long lsn;
+        private final List<ObjectNode> documents = new ArrayList<>();
+
+        private SourceChange(long lsn) {
+            this.lsn = lsn;
+        }
+    }
+
+    private static final class Checkpoint {
+        private long lsn;
+        private String etag;
+        private String continuation;
+        private long continuationLsn;
+    }
+}
@@ -22,7 +22,6 @@ import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.function.Function;
@@ -52,31 +51,18 @@ public class Resources {
             int partitionCount,
             int documentCount) {
 
-        List<ObjectNode> docs = new ArrayList<>();
+        // Documents are generated as they are inserted instead of being collected up front
+        Flux.range(0, partitionCount)
+                .map(i -> UUID.randomUUID().toString())
+                .concatMap(partitionKey -> Flux.range(0, documentCount)
+                        .map(j -> getDocumentDefinition(partitionKey)))
+                .flatMap(container::createItem, 10)
+                .map(CosmosItemResponse::getItem)
+                .doOnNext(doc -> partitionKeyToDocuments.put(
+                        doc.get(PARTITION_KEY_FIELD_NAME).textValue(),
+                        doc))
+                .blockLast();
 
-        for (int i = 0; i < partitionCount; i++) {
-            String partitionKey = UUID.randomUUID().toString();
-            for (int j = 0; j < documentCount; j++) {
-                docs.add(getDocumentDefinition(partitionKey));
-            }
-        }
-
-        ArrayList<Mono<CosmosItemResponse<ObjectNode>>> result = new ArrayList<>();
-        for (int i = 0; i < docs.size(); i++) {
-            result.add(container
-                    .createItem(docs.get(i)));
-        }
-
-        List<ObjectNode> insertedDocs = Flux.merge(
-                Flux.fromIterable(result),
-                10)
-                .map(CosmosItemResponse::getItem).collectList().block();
-
-        for (ObjectNode doc : insertedDocs) {
-            partitionKeyToDocuments.put(
-                    doc.get(PARTITION_KEY_FIELD_NAME).textValue(),
-                    doc);
-        }
         logger.info("FINISHED INSERT");
     }
 
@@ -84,23 +70,19 @@ public class Resources {
             int partitionCount,
             int documentCount) {
 
-        Collection<ObjectNode> docs;
-        for (int i = 0; i < partitionCount; i++) {
-            String partitionKey = this.partitionKeyToDocuments
-                    .keySet()
-                    .stream()
-                    .skip(i)
-                    .findFirst()
-                    .get();
-
-            docs = this.partitionKeyToDocuments.get(partitionKey);
-
-            for (int j = 0; j < documentCount; j++) {
-                ObjectNode docToBeDeleted = docs.stream().findFirst().get();
-                container.deleteItem(docToBeDeleted, null).block();
-                docs.remove(docToBeDeleted);
-            }
-        }
+        List<String> partitionKeys = new ArrayList<>(this.partitionKeyToDocuments.keySet());
+        Flux.fromIterable(partitionKeys.subList(0, Math.min(partitionCount, partitionKeys.size())))
+                .concatMapIterable(partitionKey -> {
+                    List<ObjectNode> docs = this.partitionKeyToDocuments.get(partitionKey);
+                    List<ObjectNode> docsToBeDeleted = new ArrayList<>();
+                    // removing from the tail keeps each removal O(1)
+                    for (int j = 0; j < documentCount && !docs.isEmpty(); j++) {
+                        docsToBeDeleted.add(docs.remove(docs.size() - 1));
+                    }
+                    return docsToBeDeleted;
+                })
+                .flatMap(docToBeDeleted -> container.deleteItem(docToBeDeleted, null), 10)
+                .blockLast();
         logger.info("FINISHED DELETE");
     }
 
@@ -108,27 +90,21 @@ public class Resources {
             int partitionCount,
             int documentCount) {
 
-        Collection<ObjectNode> docs;
-        for (int i = 0; i < partitionCount; i++) {
-            String partitionKey = this.partitionKeyToDocuments
-                    .keySet()
-                    .stream()
-                    .skip(i)
-                    .findFirst()
-                    .get();
-
-            docs = this.partitionKeyToDocuments.get(partitionKey);
-
-            for (int j = 0; j < documentCount; j++) {
-                ObjectNode docToBeUpdated = docs.stream().skip(j).findFirst().get();
-                docToBeUpdated.put("someProperty", UUID.randomUUID().toString());
-                container.replaceItem(
-                        docToBeUpdated,
-                        docToBeUpdated.get("id").textValue(),
-                        new PartitionKey(docToBeUpdated.get(PARTITION_KEY_FIELD_NAME).textValue()),
-                        null).block();
-            }
-        }
+        List<String> partitionKeys = new ArrayList<>(this.partitionKeyToDocuments.keySet());
+        Flux.fromIterable(partitionKeys.subList(0, Math.min(partitionCount, partitionKeys.size())))
+                .concatMapIterable(partitionKey -> {
+                    List<ObjectNode> docs = this.partitionKeyToDocuments.get(partitionKey);
+                    return docs.subList(0, Math.min(documentCount, docs.size()));
+                })
+                .flatMap(docToBeUpdated -> {
+                    docToBeUpdated.put("someProperty", UUID.randomUUID().toString());
+                    return container.replaceItem(
+                            docToBeUpdated,
+                            docToBeUpdated.get("id").textValue(),
+                            new PartitionKey(docToBeUpdated.get(PARTITION_KEY_FIELD_NAME).textValue()),
+                            null);
+                }, 10)
+                .blockLast();
         logger.info("FINISHED UPSERT");
     }
 
@@ -0,0 +1,127 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.models.FeedRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sample for archiving the Change Feed to local segment files with {@link ChangeFeedArchive} and replaying a time
+ * window from disk. Re-processing history from the archive costs no RU and runs at disk speed, instead of
+ * re-reading the Change Feed from the beginning.
+ */
+public class SampleChangeFeedArchive {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedArchive";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedArchive.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedArchive p = new SampleChangeFeedArchive();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.changeFeedArchiveDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void changeFeedArchiveDemo() throws Exception {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        Instant demoStart = Instant.now().minusSeconds(1);
+        resources.insertDocuments(10, 20);
+
+        Path archiveDirectory = Files.createTempDirectory("changefeed-archive");
+        logger.info("Archiving change feed to {}", archiveDirectory);
+        List<FeedRange> feedRanges = container.getFeedRanges().block();
+
+        // <ArchiveFeedRanges>
+        try (ChangeFeedArchive archive = new ChangeFeedArchive(archiveDirectory, Duration.ofMinutes(5), 64 * 1024 * 1024)) {
+            for (FeedRange feedRange : feedRanges) {
+                archive.archive(container, feedRange, 100);
+            }
+        }
+        // </ArchiveFeedRanges>
+
+        resources.updateDocuments(5, 10);
+
+        // Re-opening the archive picks up the continuation of each feed range from the index,
+        // so only the updates are read from the service
+        try (ChangeFeedArchive archive = new ChangeFeedArchive(archiveDirectory, Duration.ofMinutes(5), 64 * 1024 * 1024)) {
+            for (FeedRange feedRange : feedRanges) {
+                archive.archive(container, feedRange, 100);
+            }
+
+            // <ReplayWindow>
+            AtomicLong replayed = new AtomicLong();
+            long start = System.nanoTime();
+            archive.replay(demoStart, Instant.now(), document -> replayed.incrementAndGet());
+            logger.info("Replayed {} document(s) from disk in {} ms",
+                replayed.get(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+            // </ReplayWindow>
+        }
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting container...");
+            if (container != null)
+                container.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
@@ -0,0 +1,108 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sample for bootstrapping a new Change Feed consumer with {@link ChangeFeedBootstrap}: the current state is
+ * scanned in parallel, then the consumer switches to the live Change Feed at the recorded handoff points.
+ */
+public class SampleChangeFeedBootstrap {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedBootstrap";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedBootstrap.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedBootstrap p = new SampleChangeFeedBootstrap();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.bootstrapDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void bootstrapDemo() {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        resources.insertDocuments(10, 50);
+
+        // <ChangeFeedBootstrap>
+        ChangeFeedBootstrap bootstrap = new ChangeFeedBootstrap(container, Instant.EPOCH, 4);
+
+        AtomicLong snapshot = new AtomicLong();
+        bootstrap.backfill(items -> snapshot.addAndGet(items.size()));
+        logger.info("Snapshot contained {} item(s)", snapshot.get());
+
+        for (ChangeFeedBootstrap.Handoff handoff : bootstrap.getHandoffs()) {
+            logger.info("Range {} hands off to the live Change Feed from the point recorded at {}",
+                handoff.getFeedRange(), handoff.getRecordedAt());
+        }
+
+        // Changes made after the snapshot are picked up by the live Change Feed from the handoff points
+        resources.insertDocuments(5, 10);
+        long live = bootstrap.catchUp(changes -> { });
+        logger.info("Live Change Feed delivered {} change(s) after the handoff", live);
+        // </ChangeFeedBootstrap>
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting container...");
+            if (container != null)
+                container.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
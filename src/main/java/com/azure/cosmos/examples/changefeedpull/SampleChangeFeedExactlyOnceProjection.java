@@ -0,0 +1,134 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.models.CosmosContainerProperties;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.ThroughputProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sample for an exactly-once Change Feed projection with {@link ExactlyOnceProjection}.
+ * The projection is run twice over the same feed ranges; the second run resumes from the continuation committed
+ * with the derived documents and does not write anything again.
+ */
+public class SampleChangeFeedExactlyOnceProjection {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncContainer targetContainer;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedProjectionSource";
+    public static final String TARGET_COLLECTION_NAME = "ChangeFeedProjectionTarget";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedExactlyOnceProjection.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedExactlyOnceProjection p = new SampleChangeFeedExactlyOnceProjection();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.exactlyOnceProjectionDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void exactlyOnceProjectionDemo() {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        CosmosContainerProperties targetProperties =
+            new CosmosContainerProperties(TARGET_COLLECTION_NAME, "/" + PARTITION_KEY_FIELD_NAME);
+        database.createContainerIfNotExists(targetProperties, ThroughputProperties.createManualThroughput(400)).block();
+        this.targetContainer = database.getContainer(TARGET_COLLECTION_NAME);
+
+        resources.insertDocuments(10, 20);
+
+        // <ExactlyOnceProjection>
+        ExactlyOnceProjection projection = new ExactlyOnceProjection(
+            "propSummary",
+            container,
+            targetContainer,
+            PARTITION_KEY_FIELD_NAME,
+            SampleChangeFeedExactlyOnceProjection::summarize);
+
+        List<FeedRange> feedRanges = container.getFeedRanges().block();
+        for (FeedRange feedRange : feedRanges) {
+            logger.info("First run wrote {} derived document(s)", projection.run(feedRange, 100));
+        }
+        // </ExactlyOnceProjection>
+
+        // Simulates a restart: the continuation and per partition checkpoints are read back from the target
+        for (FeedRange feedRange : feedRanges) {
+            logger.info("Second run wrote {} derived document(s)", projection.run(feedRange, 100));
+        }
+    }
+
+    private static List<ObjectNode> summarize(JsonNode source) {
+        ObjectNode summary = OBJECT_MAPPER.createObjectNode();
+        summary.put("id", "summary-" + source.get("id").asText());
+        summary.put(PARTITION_KEY_FIELD_NAME, source.get(PARTITION_KEY_FIELD_NAME).asText());
+        summary.put("propLength", source.path("prop").asText().length());
+        return Collections.singletonList(summary);
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting containers...");
+            if (container != null)
+                container.delete().block();
+            if (targetContainer != null)
+                targetContainer.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
@@ -0,0 +1,117 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sample for a point read cache kept coherent by the Change Feed with {@link ChangeFeedNearCache}.
+ * A small hot set of items is read repeatedly while some of them are updated; the cache picks up the updates from
+ * the Change Feed instead of expiring entries.
+ */
+public class SampleChangeFeedNearCache {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedNearCache";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedNearCache.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedNearCache p = new SampleChangeFeedNearCache();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.nearCacheDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void nearCacheDemo() throws InterruptedException {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        resources.insertDocuments(5, 20);
+        List<ObjectNode> hotItems = new ArrayList<>(resources.partitionKeyToDocuments.values()).subList(0, 10);
+
+        // <NearCache>
+        ChangeFeedNearCache cache = new ChangeFeedNearCache(
+            container, "/" + PARTITION_KEY_FIELD_NAME, 1000, Duration.ofMinutes(10), Duration.ofSeconds(1), false);
+        cache.start();
+
+        for (int i = 0; i < 500; i++) {
+            ObjectNode item = hotItems.get(ThreadLocalRandom.current().nextInt(hotItems.size()));
+            cache.readItem(item.get("id").asText(), item.get(PARTITION_KEY_FIELD_NAME).asText()).block();
+        }
+        cache.logStatistics();
+        // </NearCache>
+
+        // Updates reach the cached entries through the Change Feed
+        resources.updateDocuments(5, 20);
+        Thread.sleep(3000);
+        ObjectNode updated = hotItems.get(0);
+        JsonNode cached = cache.readItem(updated.get("id").asText(), updated.get(PARTITION_KEY_FIELD_NAME).asText()).block();
+        logger.info("Cached someProperty after the update: {}", cached.path("someProperty").asText());
+        cache.logStatistics();
+        cache.stop();
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting container...");
+            if (container != null)
+                container.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
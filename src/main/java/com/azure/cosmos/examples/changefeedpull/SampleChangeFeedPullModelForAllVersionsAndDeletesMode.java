@@ -8,6 +8,7 @@ import com.azure.cosmos.CosmosAsyncClient;
 import com.azure.cosmos.CosmosAsyncContainer;
 import com.azure.cosmos.CosmosAsyncDatabase;
 import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.changefeed.ChangeFeedCompactor;
 import com.azure.cosmos.examples.common.AccountSettings;
 import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
 import com.azure.cosmos.models.FeedRange;
@@ -33,6 +34,9 @@ public class SampleChangeFeedPullModelForAllVersionsAndDeletesMode {
     public static final String PARTITION_KEY_FIELD_NAME = "pk";
     protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedPullModelForAllVersionsAndDeletesMode.class);
 
+    //  Optional: collapse intermediate versions of the same item within a page, set to null to see every version
+    private final ChangeFeedCompactor<JsonNode> compactor = ChangeFeedCompactor.forPullModel("/" + PARTITION_KEY_FIELD_NAME);
+
     public static void main(String[] args) {
         SampleChangeFeedPullModelForAllVersionsAndDeletesMode p = new SampleChangeFeedPullModelForAllVersionsAndDeletesMode();
 
@@ -85,6 +89,13 @@ public class SampleChangeFeedPullModelForAllVersionsAndDeletesMode {
             results = response.getResults();
             logger.info("Got " + results.size() + " items(s)");
 
+            // <CompactAllVersionsAndDeletes>
+            if (compactor != null) {
+                results = compactor.compact(results);
+                logger.info("Kept " + results.size() + " items(s) after compacting per (id, partition key)");
+            }
+            // </CompactAllVersionsAndDeletes>
+
             // applying the continuation token
             // only after processing all events
             options = CosmosChangeFeedRequestOptions
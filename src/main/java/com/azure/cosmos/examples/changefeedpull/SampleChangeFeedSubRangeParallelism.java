@@ -0,0 +1,107 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.models.FeedRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sample for reading the Change Feed of one physical partition with more readers than there are partitions, using
+ * {@link SubRangeChangeFeedReader}. The feed range is split into effective partition key sub-ranges that are read
+ * concurrently, and the readers are later rebalanced to a different parallelism without losing their position.
+ */
+public class SampleChangeFeedSubRangeParallelism {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedSubRangeParallelism";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedSubRangeParallelism.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedSubRangeParallelism p = new SampleChangeFeedSubRangeParallelism();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.subRangeParallelismDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void subRangeParallelismDemo() {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        resources.insertDocuments(20, 20);
+
+        // A small container has a single physical partition, so getFeedRanges() offers a single reader
+        FeedRange feedRange = container.getFeedRanges().block().get(0);
+
+        // <SplitFeedRange>
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        SubRangeChangeFeedReader reader = new SubRangeChangeFeedReader(container, feedRange, parallelism);
+        reader.readUntilCaughtUp(documents -> logger.info("Got " + documents.size() + " items(s)"));
+        // </SplitFeedRange>
+
+        resources.updateDocuments(20, 10);
+
+        // <RebalanceReaders>
+        // Fewer readers pick up exactly where the previous ones stopped
+        reader.rebalance(2);
+        long updates = reader.readUntilCaughtUp(documents -> logger.info("Got " + documents.size() + " items(s)"));
+        logger.info("Read {} updated document(s) after rebalancing", updates);
+        // </RebalanceReaders>
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting container...");
+            if (container != null)
+                container.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
@@ -0,0 +1,117 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.ConsistencyLevel;
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Sample for driving a Change Feed benchmark with {@link ChangeFeedWorkloadGenerator}.
+ * The generator seeds the container through bulk execution, then runs an interleaved insert / update / delete
+ * workload at a target rate; the Change Feed of the whole container is drained afterwards to show the volume it
+ * produced.
+ */
+public class SampleChangeFeedWorkloadGenerator {
+
+    public static CosmosAsyncClient clientAsync;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncDatabase database;
+
+    public static final String DATABASE_NAME = "db";
+    public static final String COLLECTION_NAME = "ChangeFeedWorkload";
+    public static final String PARTITION_KEY_FIELD_NAME = "pk";
+    protected static Logger logger = LoggerFactory.getLogger(SampleChangeFeedWorkloadGenerator.class);
+
+    public static void main(String[] args) {
+        SampleChangeFeedWorkloadGenerator p = new SampleChangeFeedWorkloadGenerator();
+
+        try {
+            logger.info("Starting ASYNC main");
+            p.workloadDemo();
+            logger.info("Demo complete, please hold while resources are released");
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(String.format("Cosmos getStarted failed with %s", e));
+        } finally {
+            logger.info("Closing the client");
+            p.shutdown();
+        }
+    }
+
+    public void workloadDemo() {
+
+        clientAsync = this.getCosmosAsyncClient();
+        Resources resources = new Resources(PARTITION_KEY_FIELD_NAME, clientAsync, DATABASE_NAME, COLLECTION_NAME);
+        this.container = resources.container;
+        this.database = resources.database;
+
+        // <WorkloadGenerator>
+        // 50% inserts, 40% updates, 10% deletes over 100 logical partitions
+        ChangeFeedWorkloadGenerator generator =
+            new ChangeFeedWorkloadGenerator(container, PARTITION_KEY_FIELD_NAME, 100, 50, 40);
+        generator.seed(100);
+        generator.run(1000, Duration.ofSeconds(30));
+        // </WorkloadGenerator>
+        logger.info("{} live document(s) after the workload", generator.getLiveDocumentCount());
+
+        long changes = 0;
+        CosmosChangeFeedRequestOptions options = CosmosChangeFeedRequestOptions
+            .createForProcessingFromBeginning(FeedRange.forFullRange());
+        for (FeedResponse<JsonNode> response : container
+            .queryChangeFeed(options, JsonNode.class)
+            .byPage()
+            .toIterable()) {
+
+            if (response.getResults().isEmpty()) {
+                break;
+            }
+            changes += response.getResults().size();
+        }
+        logger.info("Change feed returned {} document(s)", changes);
+    }
+
+    public CosmosAsyncClient getCosmosAsyncClient() {
+
+        return new CosmosClientBuilder()
+                .endpoint(AccountSettings.HOST)
+                .key(AccountSettings.MASTER_KEY)
+                .contentResponseOnWriteEnabled(true)
+                .consistencyLevel(ConsistencyLevel.SESSION)
+                .buildAsyncClient();
+    }
+
+    private void shutdown() {
+        try {
+            // Clean shutdown
+            logger.info("Deleting Cosmos DB resources");
+            logger.info("-Deleting container...");
+            if (container != null)
+                container.delete().block();
+            logger.info("-Deleting database...");
+            if (database != null)
+                database.delete().block();
+            logger.info("-Closing the client...");
+        } catch (Exception err) {
+            logger.error("Deleting Cosmos DB resources failed, will still attempt to close the client. See stack "
+                    + "trace below.");
+            err.printStackTrace();
+        }
+        if (clientAsync != null)
+            clientAsync.close();
+        logger.info("Done.");
+    }
+
+}
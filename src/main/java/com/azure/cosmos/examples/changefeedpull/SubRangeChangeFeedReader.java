@@ -0,0 +1,230 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The SubRangeChangeFeedReader class is an attempt to provide guidance for reading the Change Feed
+  with more concurrent readers than the container has physical partitions
+ */
+package com.azure.cosmos.examples.changefeedpull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.changefeed.common.ChangeFeedState;
+import com.azure.cosmos.implementation.feedranges.FeedRangeEpkImpl;
+import com.azure.cosmos.implementation.query.CompositeContinuationToken;
+import com.azure.cosmos.implementation.routing.Range;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Splits a feed range into N effective partition key (EPK) sub-ranges and reads their Change Feed concurrently.
+ * <p>
+ * Each reader owns one sub-range and one continuation. When the desired parallelism changes, the continuations of
+ * all readers are merged into one composite continuation, which keeps the position of every sub-range, and split
+ * again for the new number of readers, so no change is skipped or read twice.
+ * <p>
+ * The continuation handling relies on the SDK's internal ChangeFeedState, which is not part of the public API and
+ * may change between SDK versions.
+ */
+public class SubRangeChangeFeedReader {
+    private static final Logger logger = LoggerFactory.getLogger(SubRangeChangeFeedReader.class);
+
+    // Hash partitioned EPK values are 32 hex characters; "" and "FF" are the minimum and maximum
+    private static final int EPK_HEX_LENGTH = 32;
+    // Hash V2 and MULTI_HASH EPKs have the two top bits of their first byte cleared, so all data lies below "40".
+    // Splitting up to "FF" would leave three quarters of the sub-ranges empty; the span above "40" holds no data
+    // and is simply added to the last sub-range.
+    private static final BigInteger HASH_SPACE_END = toNumber("40");
+
+    private final CosmosAsyncContainer container;
+    private final List<CosmosChangeFeedRequestOptions> readerOptions = new ArrayList<>();
+    private final List<String> continuations = new ArrayList<>();
+
+    /**
+     * Creates {@code parallelism} readers over the given feed range, starting from the beginning.
+     */
+    public SubRangeChangeFeedReader(CosmosAsyncContainer container, FeedRange feedRange, int parallelism) {
+        this.container = container;
+        for (FeedRange subRange : split(feedRange, parallelism)) {
+            readerOptions.add(CosmosChangeFeedRequestOptions.createForProcessingFromBeginning(subRange));
+            continuations.add(null);
+        }
+    }
+
+    /**
+     * Creates one reader per continuation, for example continuations saved from an earlier run.
+     */
+    public SubRangeChangeFeedReader(CosmosAsyncContainer container, List<String> continuations) {
+        this.container = container;
+        for (String continuation : continuations) {
+            readerOptions.add(CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation));
+            this.continuations.add(continuation);
+        }
+    }
+
+    /**
+     * Splits an EPK feed range, such as one returned by getFeedRanges(), into {@code count} contiguous sub-ranges
+     * of equal hash space.
+     */
+    public static List<FeedRange> split(FeedRange feedRange, int count) {
+        Range<String> range = toEpkRange(feedRange);
+        List<FeedRange> subRanges = new ArrayList<>(count);
+        for (Range<String> subRange : split(range, count)) {
+            subRanges.add(new FeedRangeEpkImpl(subRange));
+        }
+        return subRanges;
+    }
+
+    /**
+     * Merges the continuations of adjacent sub-ranges into one continuation covering all of them.
+     */
+    public static String mergeContinuations(List<String> continuations) {
+        ChangeFeedState[] states = new ChangeFeedState[continuations.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = ChangeFeedState.fromString(continuations.get(i));
+        }
+        return ChangeFeedState.merge(states).toString();
+    }
+
+    /**
+     * Splits one continuation into {@code count} continuations over equal sub-ranges of its feed range.
+     */
+    public static List<String> splitContinuation(String continuation, int count) {
+        ChangeFeedState state = ChangeFeedState.fromString(continuation);
+        // A merged continuation keeps the feed range of its first part, so the covered range is taken from its tokens
+        String min = null;
+        String max = null;
+        for (CompositeContinuationToken token : state.extractContinuationTokens()) {
+            Range<String> tokenRange = token.getRange();
+            min = min == null || tokenRange.getMin().compareTo(min) < 0 ? tokenRange.getMin() : min;
+            max = max == null || tokenRange.getMax().compareTo(max) > 0 ? tokenRange.getMax() : max;
+        }
+        List<String> split = new ArrayList<>(count);
+        for (ChangeFeedState subState : state.extractForEffectiveRanges(split(new Range<>(min, max, true, false), count))) {
+            split.add(subState.toString());
+        }
+        return split;
+    }
+
+    /**
+     * Changes the number of readers. Every reader must have read at least once, so that it has a continuation.
+     */
+    public synchronized void rebalance(int parallelism) {
+        if (continuations.contains(null)) {
+            throw new IllegalStateException("All readers must have a continuation before rebalancing.");
+        }
+        List<String> rebalanced = splitContinuation(mergeContinuations(continuations), parallelism);
+        readerOptions.clear();
+        continuations.clear();
+        for (String continuation : rebalanced) {
+            readerOptions.add(CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation));
+            continuations.add(continuation);
+        }
+        logger.info("Rebalanced to {} reader(s)", parallelism);
+    }
+
+    /**
+     * Reads all sub-ranges concurrently until each one is caught up, handing every non-empty page to the handler.
+     * The handler is called from several threads at once.
+     *
+     * @return number of documents read
+     */
+    public synchronized long readUntilCaughtUp(Consumer<List<JsonNode>> handler) {
+        AtomicLong documents = new AtomicLong();
+        int readers = readerOptions.size();
+
+        // <ParallelSubRangeReaders>
+        Flux.range(0, readers)
+            .flatMap(reader -> container
+                .queryChangeFeed(readerOptions.get(reader), JsonNode.class)
+                .byPage()
+                .takeUntil(response -> response.getResults().isEmpty())
+                .doOnNext(response -> {
+                    if (!response.getResults().isEmpty()) {
+                        handler.accept(response.getResults());
+                        documents.addAndGet(response.getResults().size());
+                    }
+                    recordContinuation(reader, response);
+                })
+                .subscribeOn(Schedulers.boundedElastic()), readers)
+            .blockLast();
+        // </ParallelSubRangeReaders>
+
+        logger.info("{} reader(s) read {} document(s)", readers, documents.get());
+        return documents.get();
+    }
+
+    public synchronized List<String> getContinuations() {
+        return Collections.unmodifiableList(new ArrayList<>(continuations));
+    }
+
+    private void recordContinuation(int reader, FeedResponse<JsonNode> response) {
+        String continuation = response.getContinuationToken();
+        // readUntilCaughtUp holds the lock, readers only touch their own slot
+        continuations.set(reader, continuation);
+        readerOptions.set(reader, CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation));
+    }
+
+    private static Range<String> toEpkRange(FeedRange feedRange) {
+        FeedRange parsed = FeedRange.fromString(feedRange.toString());
+        if (!(parsed instanceof FeedRangeEpkImpl)) {
+            throw new IllegalArgumentException("Only effective partition key feed ranges can be split: " + feedRange);
+        }
+        return ((FeedRangeEpkImpl) parsed).getRange();
+    }
+
+    private static List<Range<String>> split(Range<String> range, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of sub-ranges must be at least 1.");
+        }
+        BigInteger min = toNumber(range.getMin());
+        BigInteger max = toNumber(range.getMax());
+        if (min.compareTo(HASH_SPACE_END) < 0 && max.compareTo(HASH_SPACE_END) > 0) {
+            max = HASH_SPACE_END;
+        }
+        BigInteger width = max.subtract(min);
+
+        List<Range<String>> subRanges = new ArrayList<>(count);
+        String lower = range.getMin();
+        for (int i = 1; i <= count; i++) {
+            // The outer bounds are kept as they are; only the boundaries in between are computed
+            String upper = i == count
+                ? range.getMax()
+                : toEpk(min.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count))));
+            if (upper.compareTo(lower) > 0) {
+                subRanges.add(new Range<>(lower, upper, true, false));
+                lower = upper;
+            }
+        }
+        return subRanges;
+    }
+
+    private static BigInteger toNumber(String epk) {
+        StringBuilder padded = new StringBuilder(epk);
+        while (padded.length() < EPK_HEX_LENGTH) {
+            padded.append('0');
+        }
+        return new BigInteger(padded.substring(0, EPK_HEX_LENGTH), 16);
+    }
+
+    private static String toEpk(BigInteger value) {
+        String hex = value.toString(16).toUpperCase();
+        StringBuilder padded = new StringBuilder(EPK_HEX_LENGTH);
+        for (int i = hex.length(); i < EPK_HEX_LENGTH; i++) {
+            padded.append('0');
+        }
+        return padded.append(hex).toString();
+    }
+}
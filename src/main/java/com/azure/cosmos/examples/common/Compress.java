@@ -3,14 +3,56 @@
 
 package com.azure.cosmos.examples.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP helpers shared by the samples.
+ */
 public class Compress {
 
-  public static void compress() {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public static byte[] compress(byte[] data) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+    try (OutputStream out = compressing(bytes)) {
+      out.write(data);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
 
+  public static byte[] decompress(byte[] data) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length * 4);
+    try (InputStream in = decompressing(new ByteArrayInputStream(data))) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
   }
 
-  public static void decompress() {
+  /**
+   * Wraps a stream so that everything written to it is compressed. {@code flush()} pushes all data written so far
+   * to the underlying stream, so a reader sees complete records even while the stream is still open.
+   */
+  public static OutputStream compressing(OutputStream out) throws IOException {
+    return new GZIPOutputStream(out, BUFFER_SIZE, true);
+  }
 
+  public static InputStream decompressing(InputStream in) throws IOException {
+    return new GZIPInputStream(in, BUFFER_SIZE);
   }
 
 }
@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.common;
+
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyBuilder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread safe cache of {@link PartitionKey} instances by their string components.
+ * <p>
+ * Building a partition key allocates the key and its internal representation on every call. Hot paths that use
+ * the same keys over and over can take them from this cache instead: a lookup hashes the components (strings cache
+ * their hash code), probes a few slots of a fixed size table and compares the components, without allocating
+ * anything when the key is cached. Entries are immutable and published through an atomic array, so lookups take no
+ * lock; a miss builds the key and stores it, replacing an entry of the probed slots when they are all taken, so the
+ * cache never holds more than its capacity. Two threads missing on the same key at once may both build it.
+ */
+public class PartitionKeyCache {
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity maximum number of cached keys, rounded up to a power of two
+     */
+    public PartitionKeyCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1)) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public PartitionKey get(String component) {
+        int hash = spread(component.hashCode());
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = table.get((hash + probe) & mask);
+            if (entry != null && entry.hash == hash && entry.components.length == 1
+                && entry.components[0].equals(component)) {
+                hits.increment();
+                return entry.partitionKey;
+            }
+        }
+        return put(hash, new String[] {component});
+    }
+
+    public PartitionKey get(String first, String second) {
+        int hash = spread(31 * first.hashCode() + second.hashCode());
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = table.get((hash + probe) & mask);
+            if (entry != null && entry.hash == hash && entry.components.length == 2
+                && entry.components[0].equals(first) && entry.components[1].equals(second)) {
+                hits.increment();
+                return entry.partitionKey;
+            }
+        }
+        return put(hash, new String[] {first, second});
+    }
+
+    public PartitionKey get(String first, String second, String third) {
+        int hash = spread(31 * (31 * first.hashCode() + second.hashCode()) + third.hashCode());
+        for (int probe = 0; probe < PROBES; probe++) {
+            Entry entry = table.get((hash + probe) & mask);
+            if (entry != null && entry.hash == hash && entry.components.length == 3
+                && entry.components[0].equals(first) && entry.components[1].equals(second)
+                && entry.components[2].equals(third)) {
+                hits.increment();
+                return entry.partitionKey;
+            }
+        }
+        return put(hash, new String[] {first, second, third});
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private PartitionKey put(int hash, String[] components) {
+        misses.increment();
+        PartitionKey partitionKey;
+        if (components.length == 1) {
+            partitionKey = new PartitionKey(components[0]);
+        } else {
+            PartitionKeyBuilder builder = new PartitionKeyBuilder();
+            for (String component : components) {
+                builder.add(component);
+            }
+            partitionKey = builder.build();
+        }
+
+        Entry entry = new Entry(hash, components, partitionKey);
+        for (int probe = 0; probe < PROBES; probe++) {
+            if (table.compareAndSet((hash + probe) & mask, null, entry)) {
+                return partitionKey;
+            }
+        }
+        // All probed slots are taken; the victim is picked by the hash, which spreads evictions over the slots
+        table.set((hash + (hash >>> 16) % PROBES) & mask, entry);
+        return partitionKey;
+    }
+
+    private static int spread(int hash) {
+        // Mixes the high bits into the low bits used as table index
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final String[] components;
+        private final PartitionKey partitionKey;
+
+        private Entry(int hash, String[] components, PartitionKey partitionKey) {
+            this.hash = hash;
+            this.components = components;
+            this.partitionKey = partitionKey;
+        }
+    }
+}
@@ -27,4 +27,23 @@ public class UserSessionData {
         }
         return userSessionList;
     }
+
+    // Like production traffic, most sessions belong to the first tenant
+    public static List<UserSession> buildSkewedSampleSessionData()
+    {
+        List<UserSession> userSessionList = new ArrayList<UserSession>();
+        for (int i = 0; i < 20; i++) {
+            for(int j=0;j < 10;j++) {
+                UserSession temp = new UserSession();
+
+                temp.setTenantId(TenantList.get(i < 16 ? 0 : i % 3));
+                temp.setUserId(String.valueOf(i));
+                temp.setSessionId(String.valueOf((i + 1) * 100 + j));
+                temp.setId(UUID.randomUUID().toString());
+
+                userSessionList.add(temp);
+            }
+        }
+        return userSessionList;
+    }
 }
@@ -12,6 +12,7 @@ import com.azure.cosmos.CosmosDiagnostics;
 import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.examples.common.AccountSettings;
 import com.azure.cosmos.examples.common.Family;
+import com.azure.cosmos.examples.documentcrud.async.ExistenceFilteredReader;
 import com.azure.cosmos.models.CosmosContainerProperties;
 import com.azure.cosmos.models.CosmosContainerResponse;
 import com.azure.cosmos.models.CosmosDatabaseRequestOptions;
@@ -26,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.UUID;
 
 public class CosmosDiagnosticsQuickStartAsync {
@@ -80,6 +82,7 @@ public class CosmosDiagnosticsQuickStartAsync {
         createDocument();
         readDocumentById();
         readDocumentDoesntExist();
+        readDocumentDoesntExistWithExistenceFilter();
         queryDocuments();
         replaceDocument();
         upsertDocument();
@@ -181,6 +184,26 @@ public class CosmosDiagnosticsQuickStartAsync {
         logger.info("Done.");
     }
 
+    private void readDocumentDoesntExistWithExistenceFilter() throws Exception {
+        logger.info("Read document by ID : bad-ID, through an existence filter");
+
+        //  The filter knows every id in the container, so the read of a missing id never reaches the service
+        ExistenceFilteredReader reader =
+            new ExistenceFilteredReader(container, 10000, 0.01, Duration.ofSeconds(30), Duration.ofSeconds(1));
+        reader.start();
+        try {
+            Family family = reader.readItem("bad-ID", new PartitionKey("bad-lastName"), Family.class).block();
+            logger.info("Read item found : {}", family != null);
+            family = reader.readItem(documentId, new PartitionKey(documentLastName), Family.class).block();
+            logger.info("Read item found : {}", family != null);
+            reader.logStatistics();
+        } finally {
+            reader.stop();
+        }
+
+        logger.info("Done.");
+    }
+
     private void queryDocuments() throws Exception {
         logger.info("Query documents in the container : {}", containerName);
 
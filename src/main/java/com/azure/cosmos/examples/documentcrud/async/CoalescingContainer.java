@@ -0,0 +1,119 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.documentcrud.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.PartitionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a {@link CosmosAsyncContainer} so that concurrent identical point reads share one request ("single flight").
+ * <p>
+ * While a read of an (id, partition key, item type) is in flight, further reads of the same item subscribe to the
+ * same {@link Mono} instead of issuing their own request; the response, or the error, fans out to all of them. Once
+ * the read completes the next call issues a new request, so nothing is cached beyond the lifetime of a request.
+ * Waiters share the same response and item instance, so they must not modify it.
+ */
+public class CoalescingContainer {
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingContainer.class);
+
+    private final CosmosAsyncContainer container;
+    private final Map<ReadKey, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    public CoalescingContainer(CosmosAsyncContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * The wrapped container, for operations that are not coalesced.
+     */
+    public CosmosAsyncContainer getContainer() {
+        return container;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<CosmosItemResponse<T>> readItem(String id, PartitionKey partitionKey, Class<T> itemType) {
+        return Mono.defer(() -> {
+            calls.incrementAndGet();
+            ReadKey key = new ReadKey(id, partitionKey.toString(), itemType);
+            AtomicBoolean issued = new AtomicBoolean();
+
+            // <SingleFlight>
+            Mono<?> read = inFlight.computeIfAbsent(key, k -> {
+                issued.set(true);
+                return container
+                    .readItem(id, partitionKey, itemType)
+                    .doFinally(signal -> inFlight.remove(k))
+                    .cache();
+            });
+            // </SingleFlight>
+
+            if (!issued.get()) {
+                deduplicated.incrementAndGet();
+            }
+            return (Mono<CosmosItemResponse<T>>) read;
+        });
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Number of calls that joined a read already in flight instead of issuing a request.
+     */
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public void logStatistics() {
+        logger.info("Coalescing container: {} read(s), {} de-duplicated, {} request(s) issued",
+            calls.get(), deduplicated.get(), calls.get() - deduplicated.get());
+    }
+
+    private static final class ReadKey {
+        private final String id;
+        private final String partitionKey;
+        private final Class<?> itemType;
+
+        private ReadKey(String id, String partitionKey, Class<?> itemType) {
+            this.id = id;
+            this.partitionKey = partitionKey;
+            this.itemType = itemType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey) o;
+            return id.equals(other.id) && partitionKey.equals(other.partitionKey) && itemType.equals(other.itemType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, partitionKey, itemType);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.azure.cosmos.models.CosmosContainerResponse;
 import com.azure.cosmos.models.CosmosDatabaseRequestOptions;
 import com.azure.cosmos.models.CosmosDatabaseResponse;
 import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
 import com.azure.cosmos.models.CosmosQueryRequestOptions;
 import com.azure.cosmos.models.PartitionKey;
 import com.azure.cosmos.models.ThroughputProperties;
@@ -28,6 +29,7 @@ import reactor.core.publisher.Mono;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -65,12 +67,15 @@ public class DocumentCRUDQuickstartAsync {
      * Sample to demonstrate the following document CRUD operations:
      * -Create
      * -Read by ID
+     * -Read by ID with concurrent identical reads coalesced
      * -Read all
      * -Query
      * -Replace
      * -Upsert
      * -Replace with conditional ETag check
+     * -Read-modify-write with retries on ETag conflicts
      * -Read document only if document has changed
+     * -Cache documents and revalidate them with their ETag
      * -Delete
      */
     public static void main(String[] args) {
@@ -126,6 +131,7 @@ public class DocumentCRUDQuickstartAsync {
 
         //done async
         readDocumentById();
+        readDocumentByIdCoalesced();
         //readAllDocumentsInContainer(); <Deprecated>
 
         //done async
@@ -149,7 +155,14 @@ public class DocumentCRUDQuickstartAsync {
 
         logger.info("replace and upsert done now...");
         replaceDocumentWithConditionalEtagCheck();
+        replaceDocumentWithOptimisticConcurrencyRetries();
         readDocumentOnlyIfChanged();
+
+        // We are adding Thread.sleep to mimic the some business computation that can
+        // happen while waiting for earlier processes to finish.
+        Thread.sleep(1000);
+
+        readDocumentThroughETagCache();
         // deleteDocument() is called at shutdown()
 
     }
@@ -267,6 +280,23 @@ public class DocumentCRUDQuickstartAsync {
         logger.info("readDocumentById done asynchronously...");
     }
 
+    private void readDocumentByIdCoalesced() throws Exception {
+        logger.info("Read document {} by ID from 100 concurrent callers.", documentId);
+
+        //  Concurrent reads of the same item share one in-flight request
+        CoalescingContainer coalescingContainer = new CoalescingContainer(container);
+        Flux.range(0, 100)
+                .flatMap(i -> coalescingContainer.readItem(documentId, new PartitionKey(documentLastName), Family.class), 100)
+                .doOnError(Exception.class, exception -> {
+                    logger.error(
+                            "Exception. e: {}",
+                            exception.getLocalizedMessage(),
+                            exception);
+                }).blockLast();
+
+        coalescingContainer.logStatistics();
+    }
+
     private void queryDocuments() throws Exception {
         logger.info("Query documents in the container {}.", containerName);
 
@@ -417,6 +447,39 @@ public class DocumentCRUDQuickstartAsync {
                 .subscribe();
     }
 
+    private void replaceDocumentWithOptimisticConcurrencyRetries() throws Exception {
+        logger.info("Update document {} from 20 concurrent writers, retrying on ETag conflicts.", documentId);
+
+        OptimisticConcurrencyUpdater updater = new OptimisticConcurrencyUpdater(
+                container, 10, Duration.ofMillis(20), Duration.ofSeconds(1));
+        PartitionKey partitionKey = new PartitionKey(documentLastName);
+
+        //  Each writer reads the document, changes it and replaces it only if nobody else changed it meanwhile
+        Flux.range(0, 20)
+                .flatMap(i -> updater.update(documentId, partitionKey, Family.class, family -> {
+                    family.setDistrict("District " + i);
+                    return family;
+                }), 20)
+                .doOnError(Exception.class, exception -> {
+                    logger.error(
+                            "Exception. e: {}",
+                            exception.getLocalizedMessage(),
+                            exception);
+                })
+                .onErrorResume(exception -> Mono.empty())
+                .blockLast();
+
+        //  The same change expressed as a patch is applied atomically by the service, without a read or retries
+        updater.update(documentId, partitionKey, Family.class, OptimisticConcurrencyUpdater.Mutation.of(
+                family -> {
+                    family.setDistrict("Patched district");
+                    return family;
+                },
+                CosmosPatchOperations.create().set("/district", "Patched district"))).block();
+
+        updater.logStatistics();
+    }
+
     private void readDocumentOnlyIfChanged() throws Exception {
         logger.info("Read document {} only if it has been changed, utilizing an ETag check.", documentId);
 
@@ -490,6 +553,31 @@ public class DocumentCRUDQuickstartAsync {
         logger.info("final etag check will be done async...");
     }
 
+    private void readDocumentThroughETagCache() throws Exception {
+        logger.info("Read document {} through a cache that revalidates with its ETag.", documentId);
+
+        // Items are served from memory for one second, then revalidated with a conditional read
+        ETagRevalidatingCache<Family> cache =
+                new ETagRevalidatingCache<>(container, Family.class, Duration.ofSeconds(1), 1000);
+        PartitionKey partitionKey = new PartitionKey(documentLastName);
+
+        // First read loads the document, the reads right after it are served from memory
+        for (int i = 0; i < 3; i++) {
+            cache.read(documentId, partitionKey).block();
+        }
+
+        // We are adding Thread.sleep to mimic the some business computation that can
+        // happen while waiting for earlier processes to finish.
+        Thread.sleep(1500);
+
+        // The document is unchanged, so concurrent reads share one conditional read that returns 304 without a body
+        Flux.range(0, 10)
+                .flatMap(i -> cache.read(documentId, partitionKey))
+                .blockLast();
+
+        cache.logStatistics();
+    }
+
     // Document delete
     private void deleteADocument() throws Exception {
         logger.info("Delete document {} by ID.", documentId);
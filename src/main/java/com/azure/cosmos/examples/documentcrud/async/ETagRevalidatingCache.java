@@ -0,0 +1,187 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.documentcrud.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.PartitionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point read cache that keeps every item together with its ETag.
+ * <p>
+ * Within the freshness window an item is served from memory. After it, the item is revalidated with a conditional
+ * read (If-None-Match with the cached ETag): a 304 Not Modified response carries no body and costs less than a full
+ * read, so the cached item is kept and only its validation time is refreshed; any other successful response replaces
+ * it. Concurrent reads of a key that needs loading or revalidation share a single request.
+ */
+public class ETagRevalidatingCache<T> {
+    private static final Logger logger = LoggerFactory.getLogger(ETagRevalidatingCache.class);
+    private static final int NOT_MODIFIED = 304;
+    private static final int NOT_FOUND = 404;
+
+    private final CosmosAsyncContainer container;
+    private final Class<T> itemType;
+    private final Duration freshness;
+    private final Map<String, CacheEntry<T>> entries;
+    private final Map<String, Mono<T>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong modified = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+
+    /**
+     * @param freshness how long an item is served without revalidation
+     * @param maxEntries entries beyond this are evicted, least recently read first
+     */
+    public ETagRevalidatingCache(CosmosAsyncContainer container, Class<T> itemType, Duration freshness, int maxEntries) {
+        this.container = container;
+        this.itemType = itemType;
+        this.freshness = freshness;
+        this.entries = new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Mono<T> read(String id, PartitionKey partitionKey) {
+        return Mono.defer(() -> {
+            String key = id + "|" + partitionKey;
+            CacheEntry<T> entry;
+            synchronized (entries) {
+                entry = entries.get(key);
+            }
+            if (entry != null && System.nanoTime() - entry.validatedAt < freshness.toNanos()) {
+                freshHits.incrementAndGet();
+                return Mono.just(entry.item);
+            }
+
+            Mono<T> load = inFlight.get(key);
+            if (load != null) {
+                merged.incrementAndGet();
+                return load;
+            }
+            // Only the first caller creates the request, later callers subscribe to the same cached result; a caller
+            // losing the race to create it is merged as well
+            boolean[] created = new boolean[1];
+            Mono<T> shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return load(k, id, partitionKey, entry)
+                    .doFinally(signal -> inFlight.remove(k))
+                    .cache();
+            });
+            if (!created[0]) {
+                merged.incrementAndGet();
+            }
+            return shared;
+        });
+    }
+
+    public void invalidate(String id, PartitionKey partitionKey) {
+        synchronized (entries) {
+            entries.remove(id + "|" + partitionKey);
+        }
+    }
+
+    public long getFreshHits() {
+        return freshHits.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public long getModified() {
+        return modified.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public void logStatistics() {
+        logger.info("ETag cache: {} fresh hit(s), {} revalidated unchanged (304), {} revalidated changed, "
+                + "{} miss(es), {} merged concurrent read(s)",
+            freshHits.get(), notModified.get(), modified.get(), misses.get(), merged.get());
+    }
+
+    private Mono<T> load(String key, String id, PartitionKey partitionKey, CacheEntry<T> cached) {
+        if (cached == null) {
+            misses.incrementAndGet();
+            return container
+                .readItem(id, partitionKey, itemType)
+                .map(response -> store(key, response));
+        }
+
+        // <ConditionalRevalidation>
+        CosmosItemRequestOptions requestOptions = new CosmosItemRequestOptions();
+        requestOptions.setIfNoneMatchETag(cached.etag);
+
+        return container
+            .readItem(id, partitionKey, requestOptions, itemType)
+            .map(response -> {
+                if (response.getStatusCode() == NOT_MODIFIED) {
+                    return revalidated(key, cached);
+                }
+                modified.incrementAndGet();
+                return store(key, response);
+            })
+            .onErrorResume(CosmosException.class, e -> {
+                if (e.getStatusCode() == NOT_MODIFIED) {
+                    return Mono.just(revalidated(key, cached));
+                }
+                if (e.getStatusCode() == NOT_FOUND) {
+                    invalidate(id, partitionKey);
+                }
+                return Mono.error(e);
+            });
+        // </ConditionalRevalidation>
+    }
+
+    private T revalidated(String key, CacheEntry<T> cached) {
+        notModified.incrementAndGet();
+        CacheEntry<T> entry = new CacheEntry<>(cached.item, cached.etag);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return cached.item;
+    }
+
+    private T store(String key, CosmosItemResponse<T> response) {
+        CacheEntry<T> entry = new CacheEntry<>(response.getItem(), response.getETag());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.item;
+    }
+
+    private static final class CacheEntry<T> {
+        private final T item;
+        private final String etag;
+        private final long validatedAt = System.nanoTime();
+
+        private CacheEntry(T item, String etag) {
+            this.item = item;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The ExistenceFilteredReader class is an attempt to provide guidance for answering point reads of items that do
+  not exist from memory, with a Bloom filter kept current by the Change Feed
+ */
+package com.azure.cosmos.examples.documentcrud.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.examples.changefeedpull.ChangeFeedPoller;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point reader that answers lookups of items that certainly do not exist without calling the service.
+ * <p>
+ * A {@link ScalableBloomFilter} of all (id, partition key) pairs is filled by a scan when the reader starts and
+ * kept current by a Change Feed pull loop ({@link ChangeFeedPoller}); the Change Feed position is taken before the
+ * scan, so nothing created during the scan is missed. A key the filter has never seen cannot exist, so the read
+ * completes empty right away. A key the filter might contain is read from the service; when that read returns 404
+ * (a false positive, or an item that was deleted, which a Bloom filter cannot forget), the key is remembered in a
+ * short-lived negative cache, whose expired entries are dropped as the Change Feed is polled.
+ * <p>
+ * Items created by other writers are only known once the Change Feed loop has seen them, so a read right after
+ * such a create can still report the item as absent for up to one poll interval. Writes made by this application
+ * should be reported with {@link #recordWrite} to close that window for them. As deletes never leave the filter,
+ * its layers grow with the number of distinct keys ever written; a reader over a container with high churn should
+ * be restarted now and then to rebuild the filter from a fresh scan.
+ */
+public class ExistenceFilteredReader {
+    private static final Logger logger = LoggerFactory.getLogger(ExistenceFilteredReader.class);
+    private static final int NOT_FOUND = 404;
+
+    private final CosmosAsyncContainer container;
+    private final ScalableBloomFilter filter;
+    private final Duration negativeTtl;
+    private final ChangeFeedPoller poller;
+    private final Map<String, Long> negativeCache = new ConcurrentHashMap<>();
+    private List<String> partitionKeyPaths;
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong filteredOut = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    /**
+     * @param expectedItems expected number of items, sizes the first filter layer
+     * @param falsePositiveRate false positive rate of the first filter layer
+     * @param negativeTtl how long a key confirmed absent by the service is answered from memory
+     * @param pollInterval delay between Change Feed polls once the feed is drained
+     */
+    public ExistenceFilteredReader(
+        CosmosAsyncContainer container,
+        int expectedItems,
+        double falsePositiveRate,
+        Duration negativeTtl,
+        Duration pollInterval) {
+
+        this.container = container;
+        this.filter = new ScalableBloomFilter(expectedItems, falsePositiveRate);
+        this.negativeTtl = negativeTtl;
+        this.poller = new ChangeFeedPoller(container, "Existence filter", pollInterval);
+    }
+
+    /**
+     * Scans the container into the filter and starts the Change Feed loop.
+     */
+    public synchronized void start() {
+        partitionKeyPaths = container.read().block().getProperties().getPartitionKeyDefinition().getPaths();
+
+        // The Change Feed position is taken first, so items created during the scan are picked up by the loop
+        CosmosChangeFeedRequestOptions feedOptions = CosmosChangeFeedRequestOptions
+            .createForProcessingFromContinuation(container
+                .queryChangeFeed(CosmosChangeFeedRequestOptions.createForProcessingFromNow(FeedRange.forFullRange()), JsonNode.class)
+                .byPage()
+                .blockFirst()
+                .getContinuationToken());
+
+        // <ExistenceScan>
+        long scanned = 0;
+        List<String> projectedPaths = new ArrayList<>();
+        StringBuilder projection = new StringBuilder("SELECT VALUE {\"id\": c.id");
+        for (int i = 0; i < partitionKeyPaths.size(); i++) {
+            projection.append(", \"p").append(i).append("\": c").append(toPropertyAccess(partitionKeyPaths.get(i)));
+            projectedPaths.add("/p" + i);
+        }
+        projection.append("} FROM c");
+        for (JsonNode item : container
+            .queryItems(projection.toString(), new CosmosQueryRequestOptions(), JsonNode.class)
+            .toIterable()) {
+            filter.add(key(item.get("id").asText(), ReadManyAggregator.partitionKey(item, projectedPaths)));
+            scanned++;
+        }
+        // </ExistenceScan>
+        logger.info("Existence filter loaded {} key(s) into {} bit(s)", scanned, filter.getBitCount());
+
+        poller.start(Mono.just(Collections.singletonList(feedOptions)), (position, changes) -> applyChanges(changes));
+    }
+
+    public synchronized void stop() {
+        poller.stop();
+    }
+
+    /**
+     * Reads an item, completing empty when it does not exist.
+     */
+    public <T> Mono<T> readItem(String id, PartitionKey partitionKey, Class<T> itemType) {
+        return Mono.defer(() -> {
+            reads.incrementAndGet();
+            String key = key(id, partitionKey);
+            if (!filter.mightContain(key)) {
+                filteredOut.incrementAndGet();
+                return Mono.empty();
+            }
+            Long expiresAt = negativeCache.get(key);
+            if (expiresAt != null) {
+                if (System.nanoTime() < expiresAt) {
+                    negativeHits.incrementAndGet();
+                    return Mono.empty();
+                }
+                negativeCache.remove(key, expiresAt);
+            }
+
+            return container
+                .readItem(id, partitionKey, itemType)
+                .map(response -> response.getItem())
+                .onErrorResume(CosmosException.class, e -> {
+                    if (e.getStatusCode() != NOT_FOUND) {
+                        return Mono.error(e);
+                    }
+                    notFound.incrementAndGet();
+                    negativeCache.put(key, System.nanoTime() + negativeTtl.toNanos());
+                    return Mono.empty();
+                });
+        });
+    }
+
+    /**
+     * Records an item created or replaced by this application, so it is found before the Change Feed reports it.
+     */
+    public void recordWrite(String id, PartitionKey partitionKey) {
+        String key = key(id, partitionKey);
+        filter.add(key);
+        negativeCache.remove(key);
+    }
+
+    public void logStatistics() {
+        logger.info("Existence filter: {} read(s), {} answered by the filter, {} by the negative cache, "
+                + "{} 404(s) from the service; {} key(s) in {} layer(s)",
+            reads.get(), filteredOut.get(), negativeHits.get(), notFound.get(), filter.size(), filter.getLayerCount());
+    }
+
+    private void applyChanges(List<JsonNode> changes) {
+        for (JsonNode item : changes) {
+            recordWrite(item.get("id").asText(), ReadManyAggregator.partitionKey(item, partitionKeyPaths));
+        }
+
+        // Expired negative entries are dropped here rather than on every read
+        long now = System.nanoTime();
+        negativeCache.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    private static String key(String id, PartitionKey partitionKey) {
+        return id + "|" + partitionKey;
+    }
+
+    private static String toPropertyAccess(String path) {
+        StringBuilder access = new StringBuilder();
+        for (String segment : path.substring(1).split("/")) {
+            access.append("[\"").append(segment.replace("\"", "\\\"")).append("\"]");
+        }
+        return access.toString();
+    }
+}
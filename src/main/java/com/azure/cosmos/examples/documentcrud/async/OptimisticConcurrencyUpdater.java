@@ -0,0 +1,223 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.documentcrud.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-modify-write loop with optimistic concurrency.
+ * <p>
+ * An update reads the item, applies the mutation and replaces the item conditionally on the ETag it read. When
+ * another writer got there first the replace fails with 412 Precondition Failed, and the whole cycle is retried
+ * after an exponential backoff with jitter, so writers contending for a hot item spread out instead of colliding
+ * again immediately. A mutation that can be expressed as a patch (for example an increment) is sent as a single
+ * patch instead; patches are applied atomically by the service, so they never conflict and need no read.
+ * <p>
+ * The number of retries each update needed is kept in a histogram, and in one histogram per item for items that
+ * needed at least one retry, which makes hot items visible. Only the {@value #MAX_TRACKED_KEYS} most recently
+ * contended items are tracked, so memory stays bounded however many items are updated.
+ */
+public class OptimisticConcurrencyUpdater {
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticConcurrencyUpdater.class);
+    private static final int PRECONDITION_FAILED = 412;
+
+    // Histogram buckets: 0, 1, 2, ... retries; the last bucket counts everything above
+    private static final int HISTOGRAM_BUCKETS = 11;
+    // Items with a histogram of their own, least recently contended evicted first
+    private static final int MAX_TRACKED_KEYS = 1000;
+
+    private final CosmosAsyncContainer container;
+    private final int maxRetries;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+    private final AtomicLongArray retryHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final Map<String, AtomicLongArray> retryHistogramByKey =
+        new LinkedHashMap<String, AtomicLongArray>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AtomicLongArray> eldest) {
+                return size() > MAX_TRACKED_KEYS;
+            }
+        };
+
+    /**
+     * @param maxRetries retries after a 412 before the update fails
+     * @param minBackoff backoff before the first retry; it doubles per retry, with jitter, up to {@code maxBackoff}
+     */
+    public OptimisticConcurrencyUpdater(CosmosAsyncContainer container, int maxRetries, Duration minBackoff, Duration maxBackoff) {
+        this.container = container;
+        this.maxRetries = maxRetries;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Applies the mutation as a patch when it provides one, otherwise with a conditional replace that is retried on
+     * conflicts. A lambda is a mutation without a patch.
+     */
+    public <T> Mono<T> update(String id, PartitionKey partitionKey, Class<T> itemType, Mutation<T> mutation) {
+        CosmosPatchOperations patch = mutation.asPatch();
+        if (patch != null) {
+            return container
+                .patchItem(id, partitionKey, patch, itemType)
+                .map(CosmosItemResponse::getItem)
+                .doOnSuccess(item -> record(id, partitionKey, 0));
+        }
+
+        return Mono.defer(() -> readModifyWrite(id, partitionKey, itemType, mutation));
+    }
+
+    private <T> Mono<T> readModifyWrite(String id, PartitionKey partitionKey, Class<T> itemType, Mutation<T> mutation) {
+        AtomicInteger attempts = new AtomicInteger();
+        // <ReadModifyWrite>
+        return Mono
+            .defer(() -> {
+                attempts.incrementAndGet();
+                return container
+                    .readItem(id, partitionKey, itemType)
+                    .flatMap(read -> {
+                        CosmosItemRequestOptions options = new CosmosItemRequestOptions();
+                        options.setIfMatchETag(read.getETag());
+                        return container.replaceItem(mutation.apply(read.getItem()), id, partitionKey, options);
+                    });
+            })
+            .retryWhen(Retry
+                .backoff(maxRetries, minBackoff)
+                .maxBackoff(maxBackoff)
+                .jitter(0.5)
+                .filter(OptimisticConcurrencyUpdater::isConflict)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+            // </ReadModifyWrite>
+            .map(CosmosItemResponse::getItem)
+            .doFinally(signal -> record(id, partitionKey, attempts.get() - 1));
+    }
+
+    /**
+     * Retry histogram over all items; bucket i counts updates that needed i retries, the last bucket more.
+     */
+    public long[] getRetryHistogram() {
+        return toArray(retryHistogram);
+    }
+
+    /**
+     * Retry histogram of one item since it was last found among the most recently contended items, or all zeros
+     * when it is not tracked.
+     */
+    public long[] getRetryHistogram(String id, PartitionKey partitionKey) {
+        AtomicLongArray histogram;
+        synchronized (retryHistogramByKey) {
+            histogram = retryHistogramByKey.get(key(id, partitionKey));
+        }
+        return histogram == null ? new long[HISTOGRAM_BUCKETS] : toArray(histogram);
+    }
+
+    /**
+     * Items with the most retries, most contended first.
+     */
+    public List<String> getMostContendedKeys(int count) {
+        List<Map.Entry<String, AtomicLongArray>> histograms;
+        synchronized (retryHistogramByKey) {
+            histograms = new ArrayList<>(retryHistogramByKey.entrySet());
+        }
+        List<Map.Entry<String, Long>> retries = new ArrayList<>();
+        for (Map.Entry<String, AtomicLongArray> entry : histograms) {
+            long total = 0;
+            for (int i = 1; i < HISTOGRAM_BUCKETS; i++) {
+                total += i * entry.getValue().get(i);
+            }
+            if (total > 0) {
+                retries.add(new AbstractMap.SimpleEntry<>(entry.getKey(), total));
+            }
+        }
+        retries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, retries.size()); i++) {
+            keys.add(retries.get(i).getKey() + " (" + retries.get(i).getValue() + " retries)");
+        }
+        return keys;
+    }
+
+    public void logStatistics() {
+        logger.info("Optimistic concurrency: retries per update histogram {}, most contended {}",
+            Arrays.toString(getRetryHistogram()), getMostContendedKeys(5));
+    }
+
+    private void record(String id, PartitionKey partitionKey, int retries) {
+        int bucket = Math.min(Math.max(retries, 0), HISTOGRAM_BUCKETS - 1);
+        retryHistogram.incrementAndGet(bucket);
+
+        // An update without retries only counts for an item that is already tracked
+        String key = key(id, partitionKey);
+        AtomicLongArray histogram;
+        synchronized (retryHistogramByKey) {
+            histogram = bucket == 0
+                ? retryHistogramByKey.get(key)
+                : retryHistogramByKey.computeIfAbsent(key, k -> new AtomicLongArray(HISTOGRAM_BUCKETS));
+        }
+        if (histogram != null) {
+            histogram.incrementAndGet(bucket);
+        }
+    }
+
+    private static boolean isConflict(Throwable error) {
+        return error instanceof CosmosException && ((CosmosException) error).getStatusCode() == PRECONDITION_FAILED;
+    }
+
+    private static String key(String id, PartitionKey partitionKey) {
+        return id + "|" + partitionKey;
+    }
+
+    private static long[] toArray(AtomicLongArray histogram) {
+        long[] values = new long[histogram.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histogram.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * A change to an item. {@link #asPatch()} returns the equivalent patch operations when the change does not
+     * depend on the current state of the item, or null when it has to be applied to the item that was read.
+     */
+    public interface Mutation<T> {
+        T apply(T current);
+
+        default CosmosPatchOperations asPatch() {
+            return null;
+        }
+
+        static <T> Mutation<T> of(UnaryOperator<T> mutation, CosmosPatchOperations patch) {
+            return new Mutation<T>() {
+                @Override
+                public T apply(T current) {
+                    return mutation.apply(current);
+                }
+
+                @Override
+                public CosmosPatchOperations asPatch() {
+                    return patch;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,238 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.documentcrud.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.Undefined;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Collects point reads issued within a short window, or until a size limit is reached, and serves them with a
+ * single {@link CosmosAsyncContainer#readMany} call.
+ * <p>
+ * readMany groups the identities by partition key range and runs one request per physical partition in parallel,
+ * so a window of reads spread over many logical partitions still costs one round trip per physical partition
+ * rather than one per item. Each returned document is matched back to its callers by id and the partition key
+ * extracted with the container's partition key paths. Reads of the same item within one window share the result.
+ * Items that do not exist complete empty, as readMany does not report them.
+ * <p>
+ * Once the aggregator is closed, or its pipeline ends for any other reason, reads still waiting for their batch
+ * fail with an {@link IllegalStateException}, and so does every later read.
+ */
+public class ReadManyAggregator<T> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReadManyAggregator.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    private final CosmosAsyncContainer container;
+    private final Class<T> itemType;
+    private final Mono<List<String>> partitionKeyPaths;
+    private final Disposable pipeline;
+    private FluxSink<Read<T>> reads;
+    private final Set<Read<T>> outstanding = ConcurrentHashMap.newKeySet();
+    private volatile IllegalStateException terminated;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong itemsRead = new AtomicLong();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+
+    /**
+     * @param window how long the first read of a batch waits for more reads
+     * @param maxBatchSize reads per readMany call
+     * @param maxConcurrentBatches readMany calls in flight at once
+     */
+    public ReadManyAggregator(
+        CosmosAsyncContainer container,
+        Class<T> itemType,
+        Duration window,
+        int maxBatchSize,
+        int maxConcurrentBatches) {
+
+        this.container = container;
+        this.itemType = itemType;
+        this.partitionKeyPaths = container.read()
+            .map(response -> response.getProperties().getPartitionKeyDefinition().getPaths())
+            .cache();
+
+        // <AggregationPipeline>
+        this.pipeline = Flux.<Read<T>>create(sink -> this.reads = sink)
+            // Fair backpressure holds the windows back while maxConcurrentBatches are in flight instead of overflowing
+            .bufferTimeout(maxBatchSize, window, true)
+            .flatMap(this::readBatch, maxConcurrentBatches)
+            .subscribe(
+                null,
+                error -> {
+                    logger.error("readMany aggregator stopped", error);
+                    terminate(new IllegalStateException("The readMany aggregator stopped.", error));
+                },
+                () -> terminate(new IllegalStateException("The readMany aggregator is closed.")));
+        // </AggregationPipeline>
+    }
+
+    public Mono<T> readItem(String id, PartitionKey partitionKey) {
+        return Mono.defer(() -> {
+            Read<T> read = new Read<>(new CosmosItemIdentity(partitionKey, id));
+            requested.incrementAndGet();
+            // Registered before the check, so a read racing with close() is failed by terminate() if not served
+            outstanding.add(read);
+            IllegalStateException error = terminated;
+            if (error != null) {
+                outstanding.remove(read);
+                return Mono.error(error);
+            }
+            reads.next(read);
+            return read.result.asMono().doFinally(signal -> outstanding.remove(read));
+        });
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public void logStatistics() {
+        long batchCount = batches.get();
+        logger.info("readMany aggregator: {} read(s) in {} readMany call(s), {} per call on average, "
+                + "{} item(s) found, {} RU",
+            requested.get(), batchCount, batchCount == 0 ? 0 : requested.get() / batchCount, itemsRead.get(),
+            String.format("%.2f", requestCharge.sum()));
+    }
+
+    /**
+     * Stops the aggregator; reads not served yet fail.
+     */
+    @Override
+    public void close() {
+        IllegalStateException closed = new IllegalStateException("The readMany aggregator is closed.");
+        terminated = closed;
+        reads.complete();
+        pipeline.dispose();
+        terminate(closed);
+    }
+
+    private void terminate(IllegalStateException error) {
+        if (terminated == null) {
+            terminated = error;
+        }
+        for (Read<T> read : outstanding) {
+            read.result.tryEmitError(terminated);
+            outstanding.remove(read);
+        }
+    }
+
+    private Mono<Void> readBatch(List<Read<T>> batch) {
+        // Reads of the same item within the window share one identity
+        Map<CosmosItemIdentity, List<Read<T>>> readsByIdentity = new LinkedHashMap<>();
+        for (Read<T> read : batch) {
+            readsByIdentity.computeIfAbsent(read.identity, identity -> new ArrayList<>()).add(read);
+        }
+        batches.incrementAndGet();
+
+        return partitionKeyPaths
+            .flatMap(paths -> container
+                .readMany(new ArrayList<>(readsByIdentity.keySet()), JsonNode.class)
+                .doOnNext(response -> complete(response, paths, readsByIdentity)))
+            .doOnError(error -> {
+                for (List<Read<T>> reads : readsByIdentity.values()) {
+                    for (Read<T> read : reads) {
+                        read.result.tryEmitError(error);
+                    }
+                }
+            })
+            .onErrorResume(error -> Mono.empty())
+            .then();
+    }
+
+    private void complete(FeedResponse<JsonNode> response, List<String> paths,
+                          Map<CosmosItemIdentity, List<Read<T>>> readsByIdentity) {
+        requestCharge.add(response.getRequestCharge());
+        for (JsonNode document : response.getResults()) {
+            CosmosItemIdentity identity = new CosmosItemIdentity(partitionKey(document, paths), document.get("id").asText());
+            List<Read<T>> reads = readsByIdentity.remove(identity);
+            if (reads == null) {
+                continue;
+            }
+            itemsRead.incrementAndGet();
+            T item;
+            try {
+                item = OBJECT_MAPPER.treeToValue(document, itemType);
+            } catch (JsonProcessingException e) {
+                for (Read<T> read : reads) {
+                    read.result.tryEmitError(e);
+                }
+                continue;
+            }
+            for (Read<T> read : reads) {
+                read.result.tryEmitValue(item);
+            }
+        }
+        // Whatever is left was not found
+        for (List<Read<T>> reads : readsByIdentity.values()) {
+            for (Read<T> read : reads) {
+                read.result.tryEmitEmpty();
+            }
+        }
+    }
+
+    /**
+     * Builds the partition key of a document from the container's partition key paths. A document without a value
+     * for its only path has {@link PartitionKey#NONE}; a missing component of a hierarchical key is undefined.
+     */
+    static PartitionKey partitionKey(JsonNode document, List<String> paths) {
+        if (paths.size() == 1 && document.at(paths.get(0)).isMissingNode()) {
+            return PartitionKey.NONE;
+        }
+        Object[] components = new Object[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            JsonNode value = document.at(paths.get(i));
+            if (value.isMissingNode()) {
+                components[i] = Undefined.value();
+            } else if (value.isNull()) {
+                components[i] = null;
+            } else if (value.isBoolean()) {
+                components[i] = value.booleanValue();
+            } else if (value.isNumber()) {
+                components[i] = value.doubleValue();
+            } else {
+                components[i] = value.asText();
+            }
+        }
+        return PartitionKey.fromObjectArray(components, false);
+    }
+
+    private static final class Read<T> {
+        private final CosmosItemIdentity identity;
+        private final Sinks.One<T> result = Sinks.one();
+
+        private Read(CosmosItemIdentity identity) {
+            this.identity = identity;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.documentcrud.async;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Bloom filter that grows as keys are added (a scalable Bloom filter).
+ * <p>
+ * Keys go into the newest layer until it holds its capacity; then a layer with twice the capacity and half the
+ * false positive rate is added. The overall false positive rate therefore stays below twice the rate of the first
+ * layer, however many keys are added. A key the filter might already contain is not added again, so the layers grow
+ * with the number of distinct keys rather than with the number of add calls. Keys cannot be removed;
+ * {@link #mightContain} never returns false for a key that was added. Thread safe.
+ */
+public class ScalableBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final List<Layer> layers = new ArrayList<>();
+    private long size;
+
+    /**
+     * @param initialCapacity keys the first layer holds at the requested false positive rate
+     * @param falsePositiveRate false positive rate of the first layer
+     */
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Capacity must be positive and the false positive rate between 0 and 1.");
+        }
+        layers.add(new Layer(initialCapacity, falsePositiveRate));
+    }
+
+    /**
+     * Adds {@code key} unless the filter might already contain it.
+     *
+     * @return whether the key was added
+     */
+    public synchronized boolean add(String key) {
+        long[] hashes = hash(key);
+        if (mightContain(hashes)) {
+            return false;
+        }
+        Layer layer = layers.get(layers.size() - 1);
+        if (layer.count >= layer.capacity) {
+            layer = new Layer(layer.capacity * 2, layer.falsePositiveRate / 2);
+            layers.add(layer);
+        }
+        layer.add(hashes[0], hashes[1]);
+        size++;
+        return true;
+    }
+
+    public synchronized boolean mightContain(String key) {
+        return mightContain(hash(key));
+    }
+
+    private boolean mightContain(long[] hashes) {
+        for (Layer layer : layers) {
+            if (layer.mightContain(hashes[0], hashes[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of keys added, not counting keys the filter might already have contained.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }
+
+    public synchronized long getBitCount() {
+        long bits = 0;
+        for (Layer layer : layers) {
+            bits += layer.bitCount;
+        }
+        return bits;
+    }
+
+    private static long[] hash(String key) {
+        // Two independent 64 bit hashes of the UTF-8 bytes, combined per probe (double hashing)
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        for (byte b : bytes) {
+            h1 = (h1 ^ (b & 0xff)) * 0x100000001b3L;
+            h2 = (h2 ^ (b & 0xff)) * 0x9e3779b97f4a7c15L;
+        }
+        return new long[] {mix(h1), mix(h2) | 1};
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Layer {
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final int bitCount;
+        private final int hashCount;
+        private final BitSet bits;
+        private long count;
+
+        private Layer(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            // Optimal sizing: m = -n ln p / (ln 2)^2, k = m / n ln 2
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            this.bitCount = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(64, optimalBits));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * LN2));
+            this.bits = new BitSet(bitCount);
+        }
+
+        private void add(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                bits.set(index(h1, h2, i));
+            }
+            count++;
+        }
+
+        private boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                if (!bits.get(index(h1, h2, i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(long h1, long h2, int i) {
+            return (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.patch.sync;
+
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.models.CosmosBatch;
+import com.azure.cosmos.models.CosmosBatchResponse;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Queues patch operations and sends them per document in as few requests as possible.
+ * <p>
+ * Operations queued for the same item are merged where that does not change the result: increments of the same
+ * path are summed, a set replaces an earlier set or increment of the same path, and an increment after a numeric set
+ * is folded into the set. Anything else (removes, array appends, operations on a parent or child of a queued path)
+ * is kept in order. On flush, every item whose merged operations fit into one patch request becomes one operation of
+ * a single bulk call; an item with more operations than one patch allows gets a transactional batch, so its patches
+ * are applied in order.
+ * <p>
+ * Flushes, whether from the background flusher or a call to {@link #flush()}, run one at a time, so the operations
+ * of an item are sent in the order they were queued even when two flushes overlap.
+ * <p>
+ * Many small increments to a few hot items thus cost one patch per item per flush instead of one request each, at
+ * the price of the flush interval as additional latency and of losing queued operations if the process dies.
+ */
+public class PatchAccumulator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PatchAccumulator.class);
+
+    // Maximum number of operations in one patch request, and in one transactional batch
+    private static final int MAX_PATCH_OPERATIONS = 10;
+    private static final int MAX_BATCH_OPERATIONS = 100;
+
+    private final CosmosContainer container;
+    private final int maxPendingOperations;
+    private final ScheduledExecutorService flusher;
+    // Held for a whole flush, so a later flush cannot send an item's operations before an earlier one has
+    private final Object flushLock = new Object();
+    private Map<CosmosItemIdentity, List<Operation>> pending = new LinkedHashMap<>();
+    private int pendingOperations;
+    // Set while a flush triggered by maxPendingOperations is scheduled but has not taken the pending operations yet
+    private boolean flushScheduled;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong patchesSent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+
+    /**
+     * @param flushInterval how often queued operations are sent
+     * @param maxPendingOperations queued operations (after merging) that trigger a flush before the interval is up
+     */
+    public PatchAccumulator(CosmosContainer container, Duration flushInterval, int maxPendingOperations) {
+        this.container = container;
+        this.maxPendingOperations = maxPendingOperations;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patch-accumulator-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(
+            this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void increment(String id, PartitionKey partitionKey, String path, long delta) {
+        queue(id, partitionKey, new Operation(OperationType.INCREMENT, path, delta));
+    }
+
+    public void increment(String id, PartitionKey partitionKey, String path, double delta) {
+        queue(id, partitionKey, new Operation(OperationType.INCREMENT, path, delta));
+    }
+
+    public void set(String id, PartitionKey partitionKey, String path, Object value) {
+        queue(id, partitionKey, new Operation(OperationType.SET, path, value));
+    }
+
+    /**
+     * Appends a value to the array at {@code arrayPath}.
+     */
+    public void append(String id, PartitionKey partitionKey, String arrayPath, Object value) {
+        queue(id, partitionKey, new Operation(OperationType.ADD, arrayPath + "/-", value));
+    }
+
+    public void remove(String id, PartitionKey partitionKey, String path) {
+        queue(id, partitionKey, new Operation(OperationType.REMOVE, path, null));
+    }
+
+    /**
+     * Sends all queued operations and waits for the responses.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<CosmosItemIdentity, List<Operation>> toSend;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                toSend = pending;
+                pending = new LinkedHashMap<>();
+                pendingOperations = 0;
+            }
+
+            // <AccumulatedPatchFlush>
+            List<CosmosItemOperation> bulkOperations = new ArrayList<>();
+            for (Map.Entry<CosmosItemIdentity, List<Operation>> entry : toSend.entrySet()) {
+                List<CosmosPatchOperations> patches = toPatches(entry.getValue());
+                sent.addAndGet(entry.getValue().size());
+                if (patches.size() == 1) {
+                    bulkOperations.add(CosmosBulkOperations.getPatchItemOperation(
+                        entry.getKey().getId(), entry.getKey().getPartitionKey(), patches.get(0)));
+                } else {
+                    executeInOrder(entry.getKey(), patches);
+                }
+            }
+
+            if (!bulkOperations.isEmpty()) {
+                for (CosmosBulkOperationResponse<Object> response : container.executeBulkOperations(bulkOperations)) {
+                    patchesSent.incrementAndGet();
+                    if (response.getResponse() != null) {
+                        requestCharge.add(response.getResponse().getRequestCharge());
+                    }
+                    if (response.getResponse() == null || !response.getResponse().isSuccessStatusCode()) {
+                        failed.incrementAndGet();
+                        logger.warn("Accumulated patch for item {} failed with status {}",
+                            response.getOperation().getId(),
+                            response.getResponse() == null
+                                ? response.getException()
+                                : response.getResponse().getStatusCode());
+                    }
+                }
+            }
+            // </AccumulatedPatchFlush>
+        }
+    }
+
+    public void logStatistics() {
+        logger.info("Patch accumulator: {} operation(s) queued, {} sent after merging, {} patch(es), "
+                + "{} failed, {} RU",
+            queued.get(), sent.get(), patchesSent.get(), failed.get(), String.format("%.2f", requestCharge.sum()));
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void queue(String id, PartitionKey partitionKey, Operation operation) {
+        if (operation.path == null || operation.path.length() < 2 || operation.path.charAt(0) != '/') {
+            throw new IllegalArgumentException("Patch path must start with '/' and name a property: " + operation.path);
+        }
+        queued.incrementAndGet();
+        boolean scheduleFlush;
+        synchronized (this) {
+            List<Operation> operations = pending.computeIfAbsent(
+                new CosmosItemIdentity(partitionKey, id), identity -> new ArrayList<>());
+            if (!merge(operations, operation)) {
+                operations.add(operation);
+                pendingOperations++;
+            }
+            scheduleFlush = !flushScheduled && pendingOperations >= maxPendingOperations;
+            if (scheduleFlush) {
+                flushScheduled = true;
+            }
+        }
+        if (scheduleFlush && !flusher.isShutdown()) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private static boolean merge(List<Operation> operations, Operation operation) {
+        // Only the latest queued operation touching the same part of the document can be merged with
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation previous = operations.get(i);
+            if (!overlaps(previous.path, operation.path)) {
+                continue;
+            }
+            if (!previous.path.equals(operation.path)) {
+                return false;
+            }
+            if (operation.type == OperationType.INCREMENT
+                && (previous.type == OperationType.INCREMENT
+                    || previous.type == OperationType.SET && previous.value instanceof Number)) {
+                operations.set(i, new Operation(previous.type, previous.path,
+                    add((Number) previous.value, (Number) operation.value)));
+                return true;
+            }
+            if (operation.type == OperationType.SET
+                && (previous.type == OperationType.SET || previous.type == OperationType.INCREMENT)) {
+                operations.set(i, operation);
+                return true;
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private static boolean overlaps(String a, String b) {
+        if (a.equals(b) || a.startsWith(b + "/") || b.startsWith(a + "/")) {
+            return true;
+        }
+        // Array element operations shift the indexes of their siblings
+        int aParent = a.lastIndexOf('/');
+        int bParent = b.lastIndexOf('/');
+        return a.substring(0, aParent).equals(b.substring(0, bParent))
+            && (isArrayIndex(a.substring(aParent + 1)) || isArrayIndex(b.substring(bParent + 1)));
+    }
+
+    private static boolean isArrayIndex(String segment) {
+        return "-".equals(segment) || !segment.isEmpty() && segment.chars().allMatch(Character::isDigit);
+    }
+
+    private static Number add(Number a, Number b) {
+        if ((a instanceof Long || a instanceof Integer) && (b instanceof Long || b instanceof Integer)) {
+            return a.longValue() + b.longValue();
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    private static List<CosmosPatchOperations> toPatches(List<Operation> operations) {
+        List<CosmosPatchOperations> patches = new ArrayList<>();
+        for (int start = 0; start < operations.size(); start += MAX_PATCH_OPERATIONS) {
+            CosmosPatchOperations patch = CosmosPatchOperations.create();
+            for (Operation operation : operations.subList(start, Math.min(start + MAX_PATCH_OPERATIONS, operations.size()))) {
+                switch (operation.type) {
+                    case INCREMENT:
+                        if (operation.value instanceof Long) {
+                            patch.increment(operation.path, (Long) operation.value);
+                        } else {
+                            patch.increment(operation.path, ((Number) operation.value).doubleValue());
+                        }
+                        break;
+                    case SET:
+                        patch.set(operation.path, operation.value);
+                        break;
+                    case ADD:
+                        patch.add(operation.path, operation.value);
+                        break;
+                    case REMOVE:
+                        patch.remove(operation.path);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation " + operation.type);
+                }
+            }
+            patches.add(patch);
+        }
+        return patches;
+    }
+
+    private void executeInOrder(CosmosItemIdentity identity, List<CosmosPatchOperations> patches) {
+        for (int start = 0; start < patches.size(); start += MAX_BATCH_OPERATIONS) {
+            CosmosBatch batch = CosmosBatch.createCosmosBatch(identity.getPartitionKey());
+            for (CosmosPatchOperations patch : patches.subList(start, Math.min(start + MAX_BATCH_OPERATIONS, patches.size()))) {
+                batch.patchItemOperation(identity.getId(), patch);
+            }
+            CosmosBatchResponse response = container.executeCosmosBatch(batch);
+            patchesSent.addAndGet(batch.getOperations().size());
+            requestCharge.add(response.getRequestCharge());
+            if (!response.isSuccessStatusCode()) {
+                failed.incrementAndGet();
+                logger.warn("Accumulated patch batch for item {} failed with status {}",
+                    identity.getId(), response.getStatusCode());
+                return;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Flushing accumulated patches failed", e);
+        }
+    }
+
+    private enum OperationType {
+        INCREMENT,
+        SET,
+        ADD,
+        REMOVE
+    }
+
+    private static final class Operation {
+        private final OperationType type;
+        private final String path;
+        private final Object value;
+
+        private Operation(OperationType type, String path, Object value) {
+            this.type = type;
+            this.path = path;
+            this.value = value;
+        }
+    }
+}
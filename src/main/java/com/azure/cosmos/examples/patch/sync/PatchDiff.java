@@ -0,0 +1,275 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.patch.sync;
+
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the patch operations that turn one version of a document into another.
+ * <p>
+ * Both versions are compared as Jackson trees (POJOs are converted first). Fields only in the old version are
+ * removed, fields only in the new version are added, changed integral numbers become increments (or sets, if
+ * increments are turned off or the old version has no {@code _etag}), objects are compared field by field, and
+ * arrays are compared element by element when their length is unchanged, or turned into appends / removals at the
+ * end when one is a prefix of the other. Any other change sets the value as a whole. System properties (those
+ * starting with an underscore) are ignored.
+ * <p>
+ * The operations are only correct against the old version, so {@link #write} sends its {@code _etag} as If-Match
+ * and fails with 412 (precondition failed) when another writer changed the document in between; the caller then
+ * reads it again and recomputes the diff. Without the ETag, an increment applied on top of a concurrent write would
+ * leave a value neither writer intended, so increments are only used when the ETag is known.
+ * <p>
+ * A patch is not worth sending when it needs more operations than a patch request allows, when its payload is not
+ * smaller than the new document, or when the id changes; {@link #shouldReplace()} reports that, and
+ * {@link #write} then replaces the document instead.
+ */
+public final class PatchDiff {
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    // Maximum number of operations in one patch request
+    public static final int MAX_OPERATIONS = 10;
+    // Approximate JSON overhead of one operation: {"op":"...","path":"...","value":...},
+    private static final int OPERATION_OVERHEAD_BYTES = 32;
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final boolean useIncrements;
+    private final String etag;
+    private final int documentSizeBytes;
+    private final boolean idChanged;
+
+    private PatchDiff(JsonNode before, JsonNode after, boolean useIncrements) {
+        this.etag = before.hasNonNull("_etag") ? before.get("_etag").asText() : null;
+        this.useIncrements = useIncrements && etag != null;
+        this.documentSizeBytes = size(after);
+        this.idChanged = !before.path("id").equals(after.path("id"));
+        diffObject("", before, after, true);
+    }
+
+    /**
+     * Diff of two POJOs, using increments for changed integral numbers when {@code before} carries an
+     * {@code _etag}.
+     */
+    public static PatchDiff between(Object before, Object after) {
+        return between(OBJECT_MAPPER.valueToTree(before), OBJECT_MAPPER.valueToTree(after), true);
+    }
+
+    /**
+     * @param useIncrements express changed integral numbers as increments instead of as sets; ignored when
+     * {@code before} has no {@code _etag} to guard the write with
+     */
+    public static PatchDiff between(JsonNode before, JsonNode after, boolean useIncrements) {
+        if (!before.isObject() || !after.isObject()) {
+            throw new IllegalArgumentException("Documents must be JSON objects.");
+        }
+        return new PatchDiff(before, after, useIncrements);
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty() && !idChanged;
+    }
+
+    public boolean shouldReplace() {
+        return idChanged || operations.size() > MAX_OPERATIONS || getPatchSizeBytes() >= documentSizeBytes;
+    }
+
+    public int getOperationCount() {
+        return operations.size();
+    }
+
+    public int getPatchSizeBytes() {
+        int bytes = 0;
+        for (Operation operation : operations) {
+            bytes += OPERATION_OVERHEAD_BYTES + operation.path.length() + (operation.value == null ? 0 : size(operation.value));
+        }
+        return bytes;
+    }
+
+    public int getDocumentSizeBytes() {
+        return documentSizeBytes;
+    }
+
+    /**
+     * ETag of the old version, sent as If-Match by {@link #write}, or null when it had none.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    public CosmosPatchOperations toPatchOperations() {
+        CosmosPatchOperations patchOperations = CosmosPatchOperations.create();
+        for (Operation operation : operations) {
+            switch (operation.type) {
+                case ADD:
+                    patchOperations.add(operation.path, operation.value);
+                    break;
+                case SET:
+                    patchOperations.set(operation.path, operation.value);
+                    break;
+                case REMOVE:
+                    patchOperations.remove(operation.path);
+                    break;
+                case INCREMENT:
+                    patchOperations.increment(operation.path, operation.value.longValue());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + operation.type);
+            }
+        }
+        return patchOperations;
+    }
+
+    /**
+     * Human readable operations, for logging.
+     */
+    public List<String> describe() {
+        List<String> descriptions = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            descriptions.add(operation.type.name().toLowerCase() + " " + operation.path
+                + (operation.value == null ? "" : " " + operation.value));
+        }
+        return Collections.unmodifiableList(descriptions);
+    }
+
+    /**
+     * Writes the new version with a patch, or with a replace when a patch is not worth it, on condition that the
+     * stored document still has the ETag of the old version.
+     *
+     * @return the response of the write, or null when both versions are equal and nothing was written
+     */
+    public <T> CosmosItemResponse<T> write(CosmosContainer container, String id, PartitionKey partitionKey, T after, Class<T> itemType) {
+        if (isEmpty()) {
+            return null;
+        }
+        if (shouldReplace()) {
+            CosmosItemRequestOptions options = new CosmosItemRequestOptions();
+            if (etag != null) {
+                options.setIfMatchETag(etag);
+            }
+            return container.replaceItem(after, id, partitionKey, options);
+        }
+        CosmosPatchItemRequestOptions options = new CosmosPatchItemRequestOptions();
+        if (etag != null) {
+            options.setIfMatchETag(etag);
+        }
+        return container.patchItem(id, partitionKey, toPatchOperations(), options, itemType);
+    }
+
+    private void diffObject(String path, JsonNode before, JsonNode after, boolean root) {
+        Iterator<Map.Entry<String, JsonNode>> beforeFields = before.fields();
+        while (beforeFields.hasNext()) {
+            String field = beforeFields.next().getKey();
+            if (!(root && isSystemProperty(field)) && !after.has(field)) {
+                operations.add(new Operation(OperationType.REMOVE, child(path, field), null));
+            }
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> afterFields = after.fields();
+        while (afterFields.hasNext()) {
+            Map.Entry<String, JsonNode> field = afterFields.next();
+            if (root && (isSystemProperty(field.getKey()) || "id".equals(field.getKey()))) {
+                continue;
+            }
+            JsonNode beforeValue = before.get(field.getKey());
+            if (beforeValue == null) {
+                operations.add(new Operation(OperationType.ADD, child(path, field.getKey()), field.getValue()));
+            } else {
+                diffValue(child(path, field.getKey()), beforeValue, field.getValue());
+            }
+        }
+    }
+
+    private void diffValue(String path, JsonNode before, JsonNode after) {
+        if (before.equals(after)) {
+            return;
+        }
+        if (before.isObject() && after.isObject()) {
+            diffObject(path, before, after, false);
+        } else if (before.isArray() && after.isArray()) {
+            diffArray(path, before, after);
+        } else if (useIncrements && before.isIntegralNumber() && after.isIntegralNumber()) {
+            operations.add(new Operation(OperationType.INCREMENT, path,
+                OBJECT_MAPPER.getNodeFactory().numberNode(after.longValue() - before.longValue())));
+        } else {
+            operations.add(new Operation(OperationType.SET, path, after));
+        }
+    }
+
+    private void diffArray(String path, JsonNode before, JsonNode after) {
+        int common = Math.min(before.size(), after.size());
+        boolean prefixUnchanged = true;
+        for (int i = 0; i < common && prefixUnchanged; i++) {
+            prefixUnchanged = before.get(i).equals(after.get(i));
+        }
+
+        if (before.size() == after.size()) {
+            // Same length: element wise, unless that takes more operations than setting the array
+            int start = operations.size();
+            for (int i = 0; i < after.size(); i++) {
+                diffValue(path + "/" + i, before.get(i), after.get(i));
+            }
+            if (operations.size() - start > 1) {
+                operations.subList(start, operations.size()).clear();
+                operations.add(new Operation(OperationType.SET, path, after));
+            }
+        } else if (prefixUnchanged && after.size() > before.size()) {
+            for (int i = before.size(); i < after.size(); i++) {
+                operations.add(new Operation(OperationType.ADD, path + "/-", after.get(i)));
+            }
+        } else if (prefixUnchanged) {
+            // Removed from the highest index down, so the remaining indexes stay valid
+            for (int i = before.size() - 1; i >= after.size(); i--) {
+                operations.add(new Operation(OperationType.REMOVE, path + "/" + i, null));
+            }
+        } else {
+            operations.add(new Operation(OperationType.SET, path, after));
+        }
+    }
+
+    private static boolean isSystemProperty(String field) {
+        return field.startsWith("_");
+    }
+
+    private static String child(String path, String field) {
+        // JSON pointer escaping
+        return path + "/" + field.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static int size(JsonNode node) {
+        return node.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private enum OperationType {
+        ADD,
+        SET,
+        REMOVE,
+        INCREMENT
+    }
+
+    private static final class Operation {
+        private final OperationType type;
+        private final String path;
+        private final JsonNode value;
+
+        private Operation(OperationType type, String path, JsonNode value) {
+            this.type = type;
+            this.path = path;
+            this.value = value;
+        }
+    }
+}
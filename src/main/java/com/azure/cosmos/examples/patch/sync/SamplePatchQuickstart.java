@@ -33,6 +33,7 @@ import com.azure.cosmos.models.ThroughputProperties;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -122,10 +123,13 @@ public class SamplePatchQuickstart {
         patchSet(families.get(2).getId(), families.get(2).getLastName());
         patchReplace(families.get(0).getId(), families.get(0).getLastName());
         patchIncrement(families.get(0).getId(), families.get(0).getLastName());
+        patchFromDiff(families.get(3).getId(), families.get(3).getLastName());
+        patchShardedCounter();
         patchConditional(families.get(0).getId(), families.get(0).getLastName(), "from f where f.registered = false");
         patchTransactionalBatch();
         patchRemove(families.get(1).getId(), families.get(1).getLastName());
         patchBulk();
+        patchAccumulated(families);
         patchTransactionalBatchAdvanced();
     }
 
@@ -453,6 +457,55 @@ public class SamplePatchQuickstart {
         }
     }
 
+    // demonstrates deriving the patch operations from the old and new version of an item
+    private void patchFromDiff(String id, String partitionKey) {
+        logger.info("Executing Patch computed from a diff of two item versions");
+
+        try {
+            JsonNode before = this.container.readItem(id, new PartitionKey(partitionKey), JsonNode.class).getItem();
+
+            // the application changes a copy of the item the way it always would
+            ObjectNode after = before.deepCopy();
+            after.put("district", "NY24");
+            after.put("registered", !before.path("registered").asBoolean());
+            after.put("visits", before.path("visits").asLong() + 1);
+            after.remove("address");
+
+            PatchDiff diff = PatchDiff.between(before, after, true);
+            logger.info("Diff: {} operation(s), about {} bytes against a {} byte document, replace instead: {}",
+                    diff.getOperationCount(), diff.getPatchSizeBytes(), diff.getDocumentSizeBytes(),
+                    diff.shouldReplace());
+            diff.describe().forEach(operation -> logger.info("  {}", operation));
+
+            CosmosItemResponse<JsonNode> response = diff.write(this.container, id, new PartitionKey(partitionKey),
+                    after, JsonNode.class);
+            if (response != null) {
+                logger.info("Item with ID {} has been written with request charge {}", id,
+                        response.getRequestCharge());
+            }
+        } catch (Exception e) {
+            logger.error("failed", e);
+        }
+    }
+
+    // demonstrates a counter spread over several documents, so increments are not limited to one logical partition
+    private void patchShardedCounter() {
+        logger.info("Executing 'increment' operations on a sharded counter");
+
+        ShardedCounter counter = new ShardedCounter(this.container, "/lastName", 4, 64, Duration.ofSeconds(1), 10,
+                Duration.ofSeconds(10));
+        try {
+            for (int i = 0; i < 100; i++) {
+                // the shard key keeps each writer on its own shard
+                counter.increment("pageViews", "writer-" + (i % 8), 1);
+            }
+            logger.info("Counter pageViews is {} over {} shard(s)", counter.get("pageViews"),
+                    counter.getShardCount("pageViews"));
+        } catch (Exception e) {
+            logger.error("failed", e);
+        }
+    }
+
     // demonstrates how to remove an attribute, including array
     private void patchRemove(String id, String partitionKey) {
         logger.info("Executing Patch with 'remove' operations");
@@ -578,6 +631,25 @@ public class SamplePatchQuickstart {
         }
     }
 
+    // this example queues many small patches to a few items; the accumulator merges them per item and sends one
+    // patch per item with bulk instead of one request per operation
+    private void patchAccumulated(List<Family> families) {
+        logger.info("Executing accumulated Patch operations");
+
+        try (PatchAccumulator accumulator = new PatchAccumulator(this.container, Duration.ofMillis(200), 1000)) {
+            for (int i = 0; i < 500; i++) {
+                Family family = families.get(i % families.size());
+                PartitionKey partitionKey = new PartitionKey(family.getLastName());
+                accumulator.increment(family.getId(), partitionKey, "/score", 1);
+                accumulator.set(family.getId(), partitionKey, "/lastScoredBy", "scorer-" + i);
+            }
+            accumulator.flush();
+            accumulator.logStatistics();
+        } catch (Exception e) {
+            logger.error("failed", e);
+        }
+    }
+
     // this example shows heterogenous bulk operations (create, batch). we first
     // create an item and then patch it.
     private void patchBulk() {
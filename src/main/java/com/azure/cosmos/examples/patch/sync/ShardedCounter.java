@@ -0,0 +1,277 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.patch.sync;
+
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Counter spread over several shard documents, each in its own logical partition.
+ * <p>
+ * A single counter document takes every increment in one logical partition, whose throughput is limited. Here an
+ * increment patches one of N shard documents instead, chosen by a shard key (for example the writer's instance id)
+ * or at random, and the value of the counter is the sum of all shards, read with one readMany call and cached for a
+ * short time. When increments of a counter keep being throttled, the number of shards is doubled (up to a maximum)
+ * and recorded in a metadata document, so other instances pick up the new shards when they next read the counter.
+ * Shards are never removed, so the sum always covers every shard that was written to.
+ * <p>
+ * Shard and metadata documents use their id as partition key value; the partition key path of the container must
+ * therefore be a top level property.
+ */
+public class ShardedCounter {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedCounter.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final CosmosContainer container;
+    private final String partitionKeyProperty;
+    private final int initialShards;
+    private final int maxShards;
+    private final Duration readCacheTtl;
+    private final int throttlesToGrow;
+    private final Duration throttleWindow;
+
+    private final Map<String, Integer> shardCounts = new ConcurrentHashMap<>();
+    private final Map<String, CachedValue> cachedValues = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Long>> recentThrottles = new ConcurrentHashMap<>();
+
+    /**
+     * @param partitionKeyPath partition key path of the container, a top level property such as "/pk"
+     * @param initialShards shards of a counter that has never grown
+     * @param readCacheTtl how long a summed value is served from memory
+     * @param throttlesToGrow throttled increments within {@code throttleWindow} after which a counter's shards are doubled
+     */
+    public ShardedCounter(
+        CosmosContainer container,
+        String partitionKeyPath,
+        int initialShards,
+        int maxShards,
+        Duration readCacheTtl,
+        int throttlesToGrow,
+        Duration throttleWindow) {
+
+        if (partitionKeyPath.lastIndexOf('/') != 0) {
+            throw new IllegalArgumentException("The partition key path must be a top level property.");
+        }
+        this.container = container;
+        this.partitionKeyProperty = partitionKeyPath.substring(1);
+        this.initialShards = initialShards;
+        this.maxShards = maxShards;
+        this.readCacheTtl = readCacheTtl;
+        this.throttlesToGrow = throttlesToGrow;
+        this.throttleWindow = throttleWindow;
+    }
+
+    /**
+     * Adds {@code delta} to a random shard of the counter.
+     */
+    public void increment(String counter, long delta) {
+        increment(counter, null, delta);
+    }
+
+    /**
+     * Adds {@code delta} to the shard selected by {@code shardKey}, so the same key always writes the same shard as
+     * long as the number of shards does not change; a null key selects a random shard.
+     */
+    public void increment(String counter, String shardKey, long delta) {
+        int shards = shardCount(counter);
+        int shard = shardKey == null
+            ? ThreadLocalRandom.current().nextInt(shards)
+            : Math.floorMod(shardKey.hashCode(), shards);
+
+        // <ShardedIncrement>
+        try {
+            incrementShard(counter, shard, delta);
+        } catch (CosmosException e) {
+            if (e.getStatusCode() != TOO_MANY_REQUESTS) {
+                throw e;
+            }
+            // The SDK already retried; when this keeps happening the counter needs more shards
+            if (recordThrottle(counter)) {
+                grow(counter);
+            }
+            // Retried once on another shard, which is throttled independently if it is in another partition
+            incrementShard(counter, ThreadLocalRandom.current().nextInt(shardCount(counter)), delta);
+        }
+        // </ShardedIncrement>
+    }
+
+    /**
+     * Sum of all shards, from memory when it was read less than the cache TTL ago.
+     */
+    public long get(String counter) {
+        CachedValue cached = cachedValues.get(counter);
+        if (cached != null && System.nanoTime() < cached.expiresAt) {
+            return cached.value;
+        }
+
+        // The metadata document is read on every refresh, so shards added by other instances are included
+        int shards = refreshShardCount(counter);
+        List<CosmosItemIdentity> identities = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            String id = shardId(counter, shard);
+            identities.add(new CosmosItemIdentity(new PartitionKey(id), id));
+        }
+        FeedResponse<JsonNode> response = container.readMany(identities, JsonNode.class);
+        long value = 0;
+        for (JsonNode shard : response.getResults()) {
+            value += shard.path("count").asLong();
+        }
+
+        cachedValues.put(counter, new CachedValue(value, System.nanoTime() + readCacheTtl.toNanos()));
+        logger.debug("Counter {} summed over {} shard(s) for {} RU", counter, shards, response.getRequestCharge());
+        return value;
+    }
+
+    public int getShardCount(String counter) {
+        return shardCount(counter);
+    }
+
+    private void incrementShard(String counter, int shard, long delta) {
+        String id = shardId(counter, shard);
+        PartitionKey partitionKey = new PartitionKey(id);
+        try {
+            container.patchItem(id, partitionKey, CosmosPatchOperations.create().increment("/count", delta),
+                new CosmosPatchItemRequestOptions(), JsonNode.class);
+        } catch (CosmosException e) {
+            if (e.getStatusCode() != NOT_FOUND) {
+                throw e;
+            }
+            // First increment of this shard
+            ObjectNode document = newDocument(id, counter);
+            document.put("shard", shard);
+            document.put("count", delta);
+            try {
+                container.createItem(document, partitionKey, new CosmosItemRequestOptions());
+            } catch (CosmosException createException) {
+                if (createException.getStatusCode() != CONFLICT) {
+                    throw createException;
+                }
+                // Another writer created it in the meantime
+                container.patchItem(id, partitionKey, CosmosPatchOperations.create().increment("/count", delta),
+                    new CosmosPatchItemRequestOptions(), JsonNode.class);
+            }
+        }
+    }
+
+    private boolean recordThrottle(String counter) {
+        long now = System.nanoTime();
+        Deque<Long> throttles = recentThrottles.computeIfAbsent(counter, c -> new ArrayDeque<>());
+        synchronized (throttles) {
+            throttles.addLast(now);
+            while (!throttles.isEmpty() && now - throttles.peekFirst() > throttleWindow.toNanos()) {
+                throttles.removeFirst();
+            }
+            if (throttles.size() < throttlesToGrow) {
+                return false;
+            }
+            throttles.clear();
+            return true;
+        }
+    }
+
+    private synchronized void grow(String counter) {
+        int current = refreshShardCount(counter);
+        int grown = Math.min(maxShards, current * 2);
+        if (grown <= current) {
+            logger.warn("Counter {} is throttled but already has the maximum of {} shard(s)", counter, current);
+            return;
+        }
+
+        // Only ever raises the shard count, also when several instances grow the counter at the same time
+        String id = metadataId(counter);
+        PartitionKey partitionKey = new PartitionKey(id);
+        CosmosPatchItemRequestOptions options = new CosmosPatchItemRequestOptions();
+        options.setFilterPredicate("from c where c.shardCount < " + grown);
+        try {
+            container.patchItem(id, partitionKey, CosmosPatchOperations.create().set("/shardCount", grown),
+                options, JsonNode.class);
+        } catch (CosmosException e) {
+            if (e.getStatusCode() == NOT_FOUND) {
+                ObjectNode document = newDocument(id, counter);
+                document.put("shardCount", grown);
+                try {
+                    container.createItem(document, partitionKey, new CosmosItemRequestOptions());
+                } catch (CosmosException createException) {
+                    if (createException.getStatusCode() != CONFLICT) {
+                        throw createException;
+                    }
+                }
+            } else if (e.getStatusCode() != PRECONDITION_FAILED) {
+                throw e;
+            }
+        }
+        shardCounts.merge(counter, grown, Math::max);
+        logger.info("Counter {} grown from {} to {} shard(s) after sustained throttling", counter, current, grown);
+    }
+
+    private int shardCount(String counter) {
+        Integer shards = shardCounts.get(counter);
+        return shards != null ? shards : refreshShardCount(counter);
+    }
+
+    private int refreshShardCount(String counter) {
+        String id = metadataId(counter);
+        int shards = initialShards;
+        try {
+            shards = container.readItem(id, new PartitionKey(id), JsonNode.class).getItem().path("shardCount").asInt(initialShards);
+        } catch (CosmosException e) {
+            if (e.getStatusCode() != NOT_FOUND) {
+                throw e;
+            }
+        }
+        return shardCounts.merge(counter, shards, Math::max);
+    }
+
+    private ObjectNode newDocument(String id, String counter) {
+        ObjectNode document = OBJECT_MAPPER.createObjectNode();
+        document.put("id", id);
+        document.put(partitionKeyProperty, id);
+        document.put("counter", counter);
+        return document;
+    }
+
+    private static String shardId(String counter, int shard) {
+        return counter + ":shard:" + shard;
+    }
+
+    private static String metadataId(String counter) {
+        return counter + ":meta";
+    }
+
+    private static final class CachedValue {
+        private final long value;
+        private final long expiresAt;
+
+        private CachedValue(long value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.queries.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Runs a query on every feed range of a container concurrently and merges the pages into one stream, with a
+ * composite continuation token that resumes all ranges where they stopped.
+ * <p>
+ * Every emitted page carries the composite token valid once that page is consumed: the SDK continuation token of
+ * each feed range, or its completion, as of that page. Pages of different ranges interleave, but the token is taken
+ * as each page is emitted, so resuming from the token of the last page a caller processed neither skips nor repeats
+ * pages, whichever range failed. The set of feed ranges is fixed when the query starts; the SDK continuation of a
+ * range stays valid when its partition later splits.
+ * <p>
+ * Each range is queried on its own, so results are not ordered across ranges, and ORDER BY, TOP, DISTINCT and
+ * aggregates apply per range only.
+ */
+public class FeedRangeQueryExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(FeedRangeQueryExecutor.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final CosmosAsyncContainer container;
+    private final int concurrency;
+    private final int pageSize;
+
+    /**
+     * @param concurrency feed ranges queried at once
+     * @param pageSize    maximum items per page
+     */
+    public FeedRangeQueryExecutor(CosmosAsyncContainer container, int concurrency, int pageSize) {
+        this.container = container;
+        this.concurrency = concurrency;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Runs {@code query} from the start when {@code continuationToken} is null, otherwise from the composite token
+     * of a page of an earlier run of the same query.
+     */
+    public <T> Flux<Page<T>> queryItems(SqlQuerySpec query, Class<T> itemType, String continuationToken) {
+        Mono<CompositeContinuation> start = continuationToken == null
+            ? container.getFeedRanges().map(CompositeContinuation::new)
+            : Mono.fromCallable(() -> CompositeContinuation.parse(continuationToken));
+
+        return start.flatMapMany(state -> {
+            logger.debug("Querying {} of {} feed range(s)", state.getPendingCount(), state.feedRanges.length);
+            return Flux.range(0, state.feedRanges.length)
+                .filter(rangeIndex -> !state.done[rangeIndex])
+                .flatMap(rangeIndex -> queryRange(query, itemType, rangeIndex, state), concurrency)
+                // onNext signals are serialized, so the state is only updated here, one page at a time
+                .map(rangePage -> {
+                    state.update(rangePage.rangeIndex, rangePage.response.getContinuationToken());
+                    return new Page<>(
+                        rangePage.response.getResults(),
+                        state.feedRanges[rangePage.rangeIndex],
+                        rangePage.response.getRequestCharge(),
+                        state.isComplete() ? null : state.serialize());
+                });
+        });
+    }
+
+    private <T> Flux<RangePage<T>> queryRange(SqlQuerySpec query, Class<T> itemType, int rangeIndex,
+                                              CompositeContinuation state) {
+        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        options.setFeedRange(state.feedRanges[rangeIndex]);
+        return container.queryItems(query, options, itemType)
+            .byPage(state.tokens[rangeIndex], pageSize)
+            .map(response -> new RangePage<>(rangeIndex, response));
+    }
+
+    /**
+     * One page of one feed range.
+     */
+    public static final class Page<T> {
+        private final List<T> results;
+        private final FeedRange feedRange;
+        private final double requestCharge;
+        private final String continuationToken;
+
+        private Page(List<T> results, FeedRange feedRange, double requestCharge, String continuationToken) {
+            this.results = results;
+            this.feedRange = feedRange;
+            this.requestCharge = requestCharge;
+            this.continuationToken = continuationToken;
+        }
+
+        public List<T> getResults() {
+            return results;
+        }
+
+        public FeedRange getFeedRange() {
+            return feedRange;
+        }
+
+        public double getRequestCharge() {
+            return requestCharge;
+        }
+
+        /**
+         * Composite token to resume after this page, or null when every feed range is exhausted.
+         */
+        public String getContinuationToken() {
+            return continuationToken;
+        }
+    }
+
+    private static final class RangePage<T> {
+        private final int rangeIndex;
+        private final FeedResponse<T> response;
+
+        private RangePage(int rangeIndex, FeedResponse<T> response) {
+            this.rangeIndex = rangeIndex;
+            this.response = response;
+        }
+    }
+
+    private static final class CompositeContinuation {
+        private final FeedRange[] feedRanges;
+        private final String[] tokens;
+        private final boolean[] done;
+
+        private CompositeContinuation(List<FeedRange> feedRanges) {
+            this(feedRanges.toArray(new FeedRange[0]), new String[feedRanges.size()], new boolean[feedRanges.size()]);
+        }
+
+        private CompositeContinuation(FeedRange[] feedRanges, String[] tokens, boolean[] done) {
+            this.feedRanges = feedRanges;
+            this.tokens = tokens;
+            this.done = done;
+        }
+
+        private void update(int rangeIndex, String token) {
+            tokens[rangeIndex] = token;
+            done[rangeIndex] = token == null;
+        }
+
+        private int getPendingCount() {
+            int pending = 0;
+            for (boolean rangeDone : done) {
+                if (!rangeDone) {
+                    pending++;
+                }
+            }
+            return pending;
+        }
+
+        private boolean isComplete() {
+            return getPendingCount() == 0;
+        }
+
+        private String serialize() {
+            ArrayNode ranges = OBJECT_MAPPER.createArrayNode();
+            for (int i = 0; i < feedRanges.length; i++) {
+                ObjectNode range = ranges.addObject();
+                range.put("feedRange", feedRanges[i].toString());
+                range.put("token", tokens[i]);
+                range.put("done", done[i]);
+            }
+            ObjectNode continuation = OBJECT_MAPPER.createObjectNode();
+            continuation.set("ranges", ranges);
+            return continuation.toString();
+        }
+
+        private static CompositeContinuation parse(String continuationToken) throws JsonProcessingException {
+            JsonNode ranges = OBJECT_MAPPER.readTree(continuationToken).path("ranges");
+            if (!ranges.isArray() || ranges.size() == 0) {
+                throw new IllegalArgumentException("Not a composite continuation token: " + continuationToken);
+            }
+            FeedRange[] feedRanges = new FeedRange[ranges.size()];
+            String[] tokens = new String[ranges.size()];
+            boolean[] done = new boolean[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                JsonNode range = ranges.get(i);
+                feedRanges[i] = FeedRange.fromString(range.get("feedRange").asText());
+                tokens[i] = range.hasNonNull("token") ? range.get("token").asText() : null;
+                done[i] = range.path("done").asBoolean();
+            }
+            return new CompositeContinuation(feedRanges, tokens, done);
+        }
+    }
+}
@@ -29,7 +29,10 @@ import reactor.core.publisher.Flux;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -129,6 +132,8 @@ public class QueriesQuickstartAsync {
         queryStringMathAndArrayOperators();
         queryWithQuerySpec();
         parallelQueryWithPagingAndContinuationTokenAndPrintQueryCharge();
+        queryByFeedRangeWithCompositeContinuationToken();
+        queryWithResultCache();
 
 
         // We are adding Thread.sleep to mimic the some business computation that can
@@ -265,10 +270,8 @@ public class QueriesQuickstartAsync {
             logger.info("Receiving a set of query response pages.");
             logger.info("Continuation Token: {}\n", continuationToken);
 
-            CosmosQueryRequestOptions queryOptions = new CosmosQueryRequestOptions();
-
             Iterable<FeedResponse<Family>> feedResponseIterator =
-                    container.queryItems(query, queryOptions, Family.class).byPage(continuationToken,pageSize).toIterable();
+                    container.queryItems(query, options, Family.class).byPage(continuationToken,pageSize).toIterable();
 
             for (FeedResponse<Family> page : feedResponseIterator) {
                 logger.info(String.format("Current page number: %d", currentPageNumber));
@@ -322,6 +325,64 @@ public class QueriesQuickstartAsync {
         logger.info("Done with parallel queries.");
     }
 
+    private void queryByFeedRangeWithCompositeContinuationToken() throws Exception {
+        logger.info("Query all feed ranges concurrently; resume an interrupted export from a composite continuation token");
+
+        SqlQuerySpec query = new SqlQuerySpec("SELECT * FROM Families");
+        FeedRangeQueryExecutor executor = new FeedRangeQueryExecutor(container, 10, 100);
+
+        //  Export the first page only, as if the export failed after it
+        FeedRangeQueryExecutor.Page<Family> lastPage = executor.queryItems(query, Family.class, null).blockFirst();
+        int documentNumber = lastPage.getResults().size();
+        double requestCharge = lastPage.getRequestCharge();
+        String continuationToken = lastPage.getContinuationToken();
+        logger.info("Interrupted after {} document(s) of feed range {}", documentNumber, lastPage.getFeedRange());
+
+        //  Resume every feed range where it stopped
+        while (continuationToken != null) {
+            logger.info("Resuming from continuation token: {}", continuationToken);
+            for (FeedRangeQueryExecutor.Page<Family> page :
+                executor.queryItems(query, Family.class, continuationToken).toIterable()) {
+                documentNumber += page.getResults().size();
+                requestCharge += page.getRequestCharge();
+                // Saved after the page is processed, so a restart from it neither skips nor repeats documents
+                continuationToken = page.getContinuationToken();
+            }
+        }
+
+        logger.info(String.format("Total documents received: %d, total request charge: %f", documentNumber, requestCharge));
+    }
+
+    private void queryWithResultCache() throws Exception {
+        logger.info("Serve a repeated parameterized query from a result cache kept coherent with the Change Feed");
+
+        QueryResultCache cache = new QueryResultCache(container, 100, Duration.ofSeconds(30), Duration.ofSeconds(1));
+        cache.start();
+        try {
+            SqlQuerySpec query = new SqlQuerySpec("SELECT * FROM Families f WHERE f.lastName = @lastName",
+                Collections.singletonList(new SqlParameter("@lastName", documentLastName)));
+
+            //  Like a dashboard refreshing the same query, only the first run is charged
+            for (int i = 0; i < 30; i++) {
+                cache.queryItems(query, Family.class).block();
+            }
+
+            //  Passing the session token of our own write, the cached results are not served until they include it.
+            //  Session tokens are only returned when the client uses session consistency.
+            Family family = new Family();
+            family.setLastName(documentLastName);
+            family.setId(documentId);
+            family.setRegistered(true);
+            String sessionToken = container.upsertItem(family).block().getSessionToken();
+            List<Family> families = cache.queryItems(query, null, Family.class, sessionToken).block();
+            logger.info("Query after our own write returned {} document(s)", families.size());
+
+            cache.logStatistics();
+        } finally {
+            cache.stop();
+        }
+    }
+
     private void queryEquality() throws Exception {
         logger.info("Query for equality using =");
 
@@ -0,0 +1,370 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+/*
+  The QueryResultCache class is an attempt to provide guidance for serving repeated queries from memory,
+  without ever returning results older than the caller's own writes
+ */
+package com.azure.cosmos.examples.queries.async;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.examples.bulk.async.FeedRangeBucketer;
+import com.azure.cosmos.examples.changefeedpull.ChangeFeedPoller;
+import com.azure.cosmos.implementation.feedranges.FeedRangeEpkImpl;
+import com.azure.cosmos.implementation.routing.Range;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyDefinition;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Size-bounded in-memory cache of query results, keyed on the normalized query text, its parameters and the
+ * partition key it is scoped to.
+ * <p>
+ * Entries expire after {@code timeToLive} and are evicted least recently used first beyond {@code maxEntries}. Once
+ * {@link #start()} is called, a background Change Feed pull loop ({@link ChangeFeedPoller}) polls every physical
+ * partition, and changes in a partition evict the entries whose query touched it: the partition of the query's
+ * partition key, or every partition for a cross partition query. A query in flight while its partitions change is
+ * not cached. Entries cached before the physical partitions are first read are not evicted until then.
+ * <p>
+ * A caller passing the session token of its last write never gets results older than that write: an entry is only
+ * served when, for every partition key range of the caller's token, the session token of the cached results is at
+ * least as recent. Otherwise the query runs with the caller's token, which makes the service wait for that write
+ * under session consistency. Partition key ranges missing from the cached token count as older, so entries of
+ * single partition queries are conservatively bypassed for writes in other partitions, and after a split.
+ */
+public class QueryResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final CosmosAsyncContainer container;
+    private final int maxEntries;
+    private final Duration timeToLive;
+    private final Mono<PartitionKeyDefinition> partitionKeyDefinition;
+    private final Map<String, CachedResult> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong sessionMisses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    private final DoubleAdder requestChargeSaved = new DoubleAdder();
+
+    private final ChangeFeedPoller poller;
+    private volatile List<WatchedRange> watchedRanges = Collections.emptyList();
+
+    /**
+     * @param maxEntries entries beyond this are evicted, least recently used first
+     * @param timeToLive entries loaded longer ago than this are queried again
+     * @param pollInterval delay between Change Feed polls once started
+     */
+    public QueryResultCache(CosmosAsyncContainer container, int maxEntries, Duration timeToLive, Duration pollInterval) {
+        this.container = container;
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.partitionKeyDefinition = container.read()
+            .map(response -> response.getProperties().getPartitionKeyDefinition())
+            .cache();
+        this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                if (size() > QueryResultCache.this.maxEntries) {
+                    capacityEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.poller = new ChangeFeedPoller(container, "Query cache", pollInterval);
+    }
+
+    /**
+     * Starts evicting entries from the Change Feed of each physical partition. Without it, entries only expire.
+     * Does not block; the physical partitions are read in the background.
+     */
+    public void start() {
+        poller.start(container.getFeedRanges().map(feedRanges -> {
+            List<WatchedRange> ranges = new ArrayList<>();
+            List<CosmosChangeFeedRequestOptions> positions = new ArrayList<>();
+            for (FeedRange feedRange : feedRanges) {
+                ranges.add(new WatchedRange(feedRange));
+                positions.add(CosmosChangeFeedRequestOptions.createForProcessingFromNow(feedRange));
+            }
+            watchedRanges = ranges;
+            return positions;
+        }), (position, changes) -> {
+            if (!changes.isEmpty()) {
+                invalidate(watchedRanges.get(position));
+            }
+        });
+    }
+
+    public void stop() {
+        poller.stop();
+    }
+
+    /**
+     * Results of a cross partition query, from memory when cached.
+     */
+    public <T> Mono<List<T>> queryItems(SqlQuerySpec query, Class<T> itemType) {
+        return queryItems(query, null, itemType, null);
+    }
+
+    /**
+     * Results of {@code query}, scoped to {@code partitionKey} unless null, from memory when cached and at least as
+     * recent as {@code sessionToken}, the session token of the caller's last write, if any.
+     */
+    public <T> Mono<List<T>> queryItems(SqlQuerySpec query, PartitionKey partitionKey, Class<T> itemType,
+                                        String sessionToken) {
+        return partitionKeyDefinition.flatMap(definition -> {
+            String key = key(query, partitionKey, itemType);
+            Map<String, Long> requiredLsns = parseSessionToken(sessionToken);
+            synchronized (entries) {
+                CachedResult entry = entries.get(key);
+                if (entry != null) {
+                    if (System.nanoTime() - entry.loadedAt >= timeToLive.toNanos()) {
+                        entries.remove(key);
+                        expired.incrementAndGet();
+                    } else if (!entry.isAtLeast(requiredLsns)) {
+                        sessionMisses.incrementAndGet();
+                    } else {
+                        hits.incrementAndGet();
+                        requestChargeSaved.add(entry.requestCharge);
+                        @SuppressWarnings("unchecked")
+                        List<T> results = (List<T>) entry.results;
+                        return Mono.just(results);
+                    }
+                }
+                misses.incrementAndGet();
+            }
+
+            String effectivePartitionKey = partitionKey == null
+                ? null
+                : FeedRangeBucketer.getEffectivePartitionKey(partitionKey, definition);
+            long generation = generation(effectivePartitionKey);
+            return query(query, partitionKey, effectivePartitionKey, itemType, sessionToken).map(loaded -> {
+                synchronized (entries) {
+                    // Partitions the query touched changed while it ran, so the results may already be stale
+                    if (generation(effectivePartitionKey) == generation) {
+                        entries.put(key, loaded);
+                    }
+                }
+                @SuppressWarnings("unchecked")
+                List<T> results = (List<T>) loaded.results;
+                return results;
+            });
+        });
+    }
+
+    private <T> Mono<CachedResult> query(SqlQuerySpec query, PartitionKey partitionKey, String effectivePartitionKey,
+                                  Class<T> itemType, String sessionToken) {
+        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        if (partitionKey != null) {
+            options.setPartitionKey(partitionKey);
+        }
+        if (sessionToken != null) {
+            options.setSessionToken(sessionToken);
+        }
+        return container.queryItems(query, options, itemType)
+            .byPage()
+            .collectList()
+            .map(pages -> {
+                List<Object> results = new ArrayList<>();
+                Map<String, Long> lsns = new HashMap<>();
+                double requestCharge = 0;
+                for (FeedResponse<T> page : pages) {
+                    results.addAll(page.getResults());
+                    requestCharge += page.getRequestCharge();
+                    for (Map.Entry<String, Long> lsn : parseSessionToken(page.getSessionToken()).entrySet()) {
+                        lsns.merge(lsn.getKey(), lsn.getValue(), Math::max);
+                    }
+                }
+                return new CachedResult(Collections.unmodifiableList(results), effectivePartitionKey, lsns, requestCharge);
+            });
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getRequestChargeSaved() {
+        return requestChargeSaved.sum();
+    }
+
+    public void logStatistics() {
+        logger.info("Query cache: {} entries, {} hit(s) saving {} RU, {} miss(es) ({} expired, {} older than the "
+                + "caller's session), {} Change Feed invalidation(s), {} capacity eviction(s)",
+            size(), hits.get(), String.format("%.2f", requestChargeSaved.sum()), misses.get(), expired.get(),
+            sessionMisses.get(), invalidations.get(), capacityEvictions.get());
+    }
+
+    private void invalidate(WatchedRange range) {
+        synchronized (entries) {
+            range.generation++;
+            Iterator<CachedResult> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedResult entry = iterator.next();
+                if (entry.effectivePartitionKey == null || range.contains(entry.effectivePartitionKey)) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sum of the change counts of the physical partitions holding {@code effectivePartitionKey}, or of all of them
+     * when null. It only changes when one of them changes.
+     */
+    private long generation(String effectivePartitionKey) {
+        synchronized (entries) {
+            long generation = 0;
+            for (WatchedRange range : watchedRanges) {
+                if (effectivePartitionKey == null || range.contains(effectivePartitionKey)) {
+                    generation += range.generation;
+                }
+            }
+            return generation;
+        }
+    }
+
+    private static String key(SqlQuerySpec query, PartitionKey partitionKey, Class<?> itemType) {
+        // Parameters are sorted by name so their order does not matter
+        Map<String, String> parameters = new TreeMap<>();
+        for (SqlParameter parameter : query.getParameters()) {
+            try {
+                parameters.put(parameter.getName(), OBJECT_MAPPER.writeValueAsString(parameter.getValue(Object.class)));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Query parameter " + parameter.getName() + " cannot be serialized", e);
+            }
+        }
+        return itemType.getName() + "|" + partitionKey + "|" + normalize(query.getQueryText()) + "|" + parameters;
+    }
+
+    /**
+     * Collapses runs of whitespace outside string literals, so formatting does not matter.
+     */
+    private static String normalize(String queryText) {
+        StringBuilder normalized = new StringBuilder(queryText.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < queryText.length(); i++) {
+            char c = queryText.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(c);
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote && queryText.charAt(i - 1) != '\\') {
+                quote = 0;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Global LSN per partition key range id of a session token, such as "0:1#12#3=11,1:1#40#3=38".
+     */
+    private static Map<String, Long> parseSessionToken(String sessionToken) {
+        if (sessionToken == null || sessionToken.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> lsns = new HashMap<>();
+        for (String rangeToken : sessionToken.split(",")) {
+            int separator = rangeToken.indexOf(':');
+            if (separator < 0) {
+                continue;
+            }
+            // Version 1 tokens hold the LSN only, version 2 tokens "version#globalLsn#region=lsn..."
+            String[] parts = rangeToken.substring(separator + 1).split("#");
+            String lsn = parts.length == 1 ? parts[0] : parts[1];
+            lsns.merge(rangeToken.substring(0, separator), Long.parseLong(lsn), Math::max);
+        }
+        return lsns;
+    }
+
+    private static final class CachedResult {
+        private final List<Object> results;
+        // Null for cross partition queries
+        private final String effectivePartitionKey;
+        private final Map<String, Long> lsns;
+        private final double requestCharge;
+        private final long loadedAt = System.nanoTime();
+
+        private CachedResult(List<Object> results, String effectivePartitionKey, Map<String, Long> lsns,
+                             double requestCharge) {
+            this.results = results;
+            this.effectivePartitionKey = effectivePartitionKey;
+            this.lsns = lsns;
+            this.requestCharge = requestCharge;
+        }
+
+        private boolean isAtLeast(Map<String, Long> requiredLsns) {
+            for (Map.Entry<String, Long> required : requiredLsns.entrySet()) {
+                Long lsn = lsns.get(required.getKey());
+                if (lsn == null || lsn < required.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class WatchedRange {
+        private final Range<String> range;
+        private long generation;
+
+        private WatchedRange(FeedRange feedRange) {
+            this.range = ((FeedRangeEpkImpl) FeedRange.fromString(feedRange.toString())).getRange();
+        }
+
+        private boolean contains(String effectivePartitionKey) {
+            return range.getMin().compareTo(effectivePartitionKey) <= 0
+                && effectivePartitionKey.compareTo(range.getMax()) < 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.subpartitioning;
+
+import com.azure.cosmos.examples.common.PartitionKeyCache;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Micro benchmark comparing hierarchical partition keys built on every call with keys taken from a
+ * {@link PartitionKeyCache}. Runs locally without an account.
+ * <p>
+ * Each round performs a fixed number of lookups of (tenant, user, session) keys drawn from a working set, after
+ * warm-up rounds, and reports the time and the bytes allocated per lookup, measured with the allocation counter of
+ * the current thread (a HotSpot extension). Working sets larger than the cache show the cost of misses.
+ */
+public class PartitionKeyCacheBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionKeyCacheBenchmark.class);
+
+    private static final int OPERATIONS = 2_000_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    // Keeps the JIT from eliminating the lookups
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int cacheCapacity = 16_384;
+        for (int workingSet : new int[] {1_000, 10_000, 100_000}) {
+            String[][] keys = buildKeys(workingSet);
+            int[] sequence = buildSequence(workingSet);
+
+            PartitionKeyCache cache = new PartitionKeyCache(cacheCapacity);
+            Result direct = run(() -> {
+                int hash = 0;
+                for (int index : sequence) {
+                    String[] key = keys[index];
+                    PartitionKey partitionKey = new PartitionKeyBuilder().add(key[0]).add(key[1]).add(key[2]).build();
+                    hash ^= System.identityHashCode(partitionKey);
+                }
+                sink = hash;
+            });
+            Result cached = run(() -> {
+                int hash = 0;
+                for (int index : sequence) {
+                    String[] key = keys[index];
+                    hash ^= System.identityHashCode(cache.get(key[0], key[1], key[2]));
+                }
+                sink = hash;
+            });
+
+            logger.info("Working set {} key(s), cache capacity {}: builder {} ns/op {} B/op, cache {} ns/op {} B/op, "
+                    + "cache hit rate {}%",
+                workingSet, cacheCapacity, format(direct.nanosPerOperation), format(direct.bytesPerOperation),
+                format(cached.nanosPerOperation), format(cached.bytesPerOperation),
+                format(100.0 * cache.getHits() / (cache.getHits() + cache.getMisses())));
+        }
+    }
+
+    private static Result run(Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            round.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long operations = (long) OPERATIONS * ROUNDS;
+        return new Result((double) nanos / operations, (double) bytes / operations);
+    }
+
+    private static String[][] buildKeys(int count) {
+        // Like UserSessionData: a few tenants, users per tenant and sessions per user
+        String[] tenants = {"Microsoft", "Bob's Burgers", "Oracle"};
+        String[][] keys = new String[count][];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new String[] {tenants[i % tenants.length], String.valueOf(i / 10), String.valueOf(i)};
+        }
+        return keys;
+    }
+
+    private static int[] buildSequence(int workingSet) {
+        Random random = new Random(42);
+        int[] sequence = new int[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            sequence[i] = random.nextInt(workingSet);
+        }
+        return sequence;
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    private static final class Result {
+        private final double nanosPerOperation;
+        private final double bytesPerOperation;
+
+        private Result(double nanosPerOperation, double bytesPerOperation) {
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.subpartitioning;
+
+import com.azure.cosmos.BridgeInternal;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.feedranges.FeedRangeEpkImpl;
+import com.azure.cosmos.implementation.routing.PartitionKeyInternal;
+import com.azure.cosmos.implementation.routing.PartitionKeyInternalHelper;
+import com.azure.cosmos.implementation.routing.Range;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyDefinition;
+import com.azure.cosmos.models.PartitionKind;
+import com.azure.cosmos.models.SqlQuerySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes reads, queries and Change Feed reads for a partition key prefix of a hierarchically partitioned
+ * (MULTI_HASH) container to the physical partitions that hold it, and runs them there concurrently.
+ * <p>
+ * The effective partition key (EPK) of a hierarchical key is the concatenation of the hashes of its components, so
+ * all items starting with a prefix such as (tenant) or (tenant, user) lie in one contiguous EPK range. That range is
+ * intersected with the ranges of the physical partitions, giving one feed range per physical partition the prefix
+ * spans; each gets its own request, and the results are merged as they arrive, in no particular order. A complete
+ * partition key resolves to its logical partition.
+ * <p>
+ * The EPK computation relies on internal SDK helpers, which are not part of the public API and may change between
+ * SDK versions. Feed ranges are resolved on every call, so partition splits are picked up.
+ */
+public class PartitionKeyPrefixRouter {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionKeyPrefixRouter.class);
+
+    private final CosmosAsyncContainer container;
+    private final int concurrency;
+    private final Mono<PartitionKeyDefinition> partitionKeyDefinition;
+
+    /**
+     * @param concurrency feed ranges read at once
+     */
+    public PartitionKeyPrefixRouter(CosmosAsyncContainer container, int concurrency) {
+        this.container = container;
+        this.concurrency = concurrency;
+        this.partitionKeyDefinition = container.read()
+            .map(response -> response.getProperties().getPartitionKeyDefinition())
+            .cache();
+    }
+
+    /**
+     * Feed ranges covering all items whose partition key starts with {@code prefix}, one per physical partition.
+     */
+    public Mono<List<FeedRange>> resolve(PartitionKey prefix) {
+        return partitionKeyDefinition.flatMap(definition -> {
+            if (definition.getKind() != PartitionKind.MULTI_HASH) {
+                return Mono.error(new IllegalStateException("Prefix routing requires a MULTI_HASH partitioned container."));
+            }
+            PartitionKeyInternal prefixInternal = BridgeInternal.getPartitionKeyInternal(prefix);
+            if (prefixInternal.getComponents().size() >= definition.getPaths().size()) {
+                return Mono.just(Collections.singletonList(FeedRange.forLogicalPartition(prefix)));
+            }
+
+            // <PrefixFeedRanges>
+            Range<String> prefixRange = PartitionKeyInternalHelper.getEPKRangeForPrefixPartitionKey(prefixInternal, definition);
+            return container.getFeedRanges().map(physicalRanges -> {
+                List<FeedRange> covering = new ArrayList<>();
+                for (FeedRange physicalRange : physicalRanges) {
+                    Range<String> range = ((FeedRangeEpkImpl) FeedRange.fromString(physicalRange.toString())).getRange();
+                    String min = max(range.getMin(), prefixRange.getMin());
+                    String max = min(range.getMax(), prefixRange.getMax());
+                    if (min.compareTo(max) < 0) {
+                        covering.add(new FeedRangeEpkImpl(new Range<>(min, max, true, false)));
+                    }
+                }
+                logger.debug("Prefix {} spans {} of {} physical partition(s)", prefix, covering.size(), physicalRanges.size());
+                return covering;
+            });
+            // </PrefixFeedRanges>
+        });
+    }
+
+    /**
+     * Runs the query on every feed range of the prefix concurrently. The query must not rely on ORDER BY, TOP or
+     * aggregates across the prefix, as each feed range is queried on its own.
+     */
+    public <T> Flux<T> queryItems(PartitionKey prefix, SqlQuerySpec query, Class<T> itemType) {
+        return resolve(prefix).flatMapMany(feedRanges -> Flux
+            .fromIterable(feedRanges)
+            .flatMap(feedRange -> {
+                CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+                options.setFeedRange(feedRange);
+                return container.queryItems(query, options, itemType);
+            }, concurrency));
+    }
+
+    /**
+     * Reads all items whose partition key starts with {@code prefix}.
+     */
+    public <T> Flux<T> readAllItems(PartitionKey prefix, Class<T> itemType) {
+        return queryItems(prefix, new SqlQuerySpec("SELECT * FROM c"), itemType);
+    }
+
+    /**
+     * Reads the Change Feed of the prefix from the beginning until every feed range is caught up.
+     */
+    public <T> Flux<T> readChangeFeedFromBeginning(PartitionKey prefix, Class<T> itemType) {
+        return resolve(prefix).flatMapMany(feedRanges -> Flux
+            .fromIterable(feedRanges)
+            .flatMap(feedRange -> container
+                .queryChangeFeed(CosmosChangeFeedRequestOptions.createForProcessingFromBeginning(feedRange), itemType)
+                .byPage()
+                .takeUntil(response -> response.getResults().isEmpty())
+                .flatMapIterable(response -> response.getResults()), concurrency));
+    }
+
+    private static String max(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static String min(String a, String b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
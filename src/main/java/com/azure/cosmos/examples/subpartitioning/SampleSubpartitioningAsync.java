@@ -10,9 +10,11 @@ import com.azure.cosmos.CosmosAsyncDatabase;
 import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.examples.common.AccountSettings;
+import com.azure.cosmos.examples.common.PartitionKeyCache;
 import com.azure.cosmos.examples.common.UserSession;
 import com.azure.cosmos.examples.common.UserSessionData;
 import com.azure.cosmos.examples.crudquickstart.async.SampleCRUDQuickstartAsync;
+import com.azure.cosmos.examples.documentcrud.async.ReadManyAggregator;
 import com.azure.cosmos.models.CosmosContainerProperties;
 import com.azure.cosmos.models.CosmosContainerRequestOptions;
 import com.azure.cosmos.models.CosmosContainerResponse;
@@ -24,6 +26,7 @@ import com.azure.cosmos.models.PartitionKeyBuilder;
 import com.azure.cosmos.models.PartitionKeyDefinition;
 import com.azure.cosmos.models.PartitionKeyDefinitionVersion;
 import com.azure.cosmos.models.PartitionKind;
+import com.azure.cosmos.models.SqlQuerySpec;
 import com.azure.cosmos.models.ThroughputProperties;
 import com.azure.cosmos.util.CosmosPagedFlux;
 import org.slf4j.Logger;
@@ -33,6 +36,8 @@ import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -45,6 +50,9 @@ public class SampleSubpartitioningAsync {
     private CosmosAsyncDatabase database;
     private CosmosAsyncContainer container;
 
+    //  Reused partition keys of the sessions read and deleted by the demo
+    private final PartitionKeyCache partitionKeyCache = new PartitionKeyCache(1024);
+
     protected static Logger logger = LoggerFactory.getLogger(SampleCRUDQuickstartAsync.class);
 
     public void close() {
@@ -115,9 +123,18 @@ public class SampleSubpartitioningAsync {
         logger.info("Reading items.");
         readItems(familiesToCreate);
 
+        logger.info("Reading items in batches.");
+        readItemsBatched(familiesToCreate);
+
         logger.info("Querying items.");
         queryItems();
 
+        logger.info("Reading items by partition key prefix.");
+        readItemsByPrefix();
+
+        logger.info("Writing skewed items with hot prefix detection.");
+        writeSkewedItems();
+
         logger.info("Deleting an item.");
         deleteItem(userSessions.get(0));
     }
@@ -223,11 +240,7 @@ public class SampleSubpartitioningAsync {
 
             userSessionFlux.flatMap(userSession -> {
                 Mono<CosmosItemResponse<UserSession>> asyncItemResponseMono = container.readItem(userSession.getId(),
-                        new PartitionKeyBuilder()
-                                .add(userSession.getTenantId())
-                                .add(userSession.getUserId())
-                                .add(userSession.getSessionId())
-                                .build()
+                        partitionKeyCache.get(userSession.getTenantId(), userSession.getUserId(), userSession.getSessionId())
                         , UserSession.class);
                 return asyncItemResponseMono;
             }).flatMap(itemResponse -> {
@@ -252,6 +265,22 @@ public class SampleSubpartitioningAsync {
 
         //  </ReadItem>
     }
+
+    private void readItemsBatched(Flux<UserSession> userSessionFlux) {
+        //  Point reads issued within 10 ms are gathered and served by one readMany call
+        //  <ReadItemsBatched>
+        try (ReadManyAggregator<UserSession> aggregator =
+                 new ReadManyAggregator<>(container, UserSession.class, Duration.ofMillis(10), 100, 4)) {
+
+            userSessionFlux.flatMap(userSession -> aggregator.readItem(userSession.getId(),
+                    partitionKeyCache.get(userSession.getTenantId(), userSession.getUserId(), userSession.getSessionId())))
+                .doOnNext(userSession -> logger.info(String.format("Item successfully read with id %s", userSession.getId())))
+                .blockLast();
+
+            aggregator.logStatistics();
+        }
+        //  </ReadItemsBatched>
+    }
 // Add the
     private void queryItems() {
         //  <QueryItems>
@@ -302,8 +331,60 @@ public class SampleSubpartitioningAsync {
         // </QueryItems>
     }
 
+    private void readItemsByPrefix() {
+        //  A prefix of the hierarchical partition key is resolved to the feed ranges of the physical partitions
+        //  holding it, which are then read concurrently
+        //  <ReadItemsByPrefix>
+        PartitionKeyPrefixRouter router = new PartitionKeyPrefixRouter(container, 8);
+
+        PartitionKey tenant = new PartitionKeyBuilder().add("Microsoft").build();
+        logger.info("Tenant Microsoft spans " + router.resolve(tenant).block().size() + " feed range(s)");
+        Long tenantSessions = router.readAllItems(tenant, UserSession.class).count().block();
+        logger.info("Tenant Microsoft has " + tenantSessions + " session(s)");
+
+        PartitionKey tenantUser = new PartitionKeyBuilder().add("Microsoft").add("0").build();
+        List<String> sessionIds = router
+                .queryItems(tenantUser, new SqlQuerySpec("SELECT * FROM c"), UserSession.class)
+                .map(UserSession::getSessionId)
+                .collectList()
+                .block();
+        logger.info("Tenant Microsoft, user 0 has sessions " + sessionIds);
+
+        Long changes = router.readChangeFeedFromBeginning(tenant, UserSession.class).count().block();
+        logger.info("Change Feed of tenant Microsoft has " + changes + " change(s)");
+        //  </ReadItemsByPrefix>
+    }
+
+    private void writeSkewedItems() {
+        //  Writes of a tenant above 50 RU/s are spread over 4 tenant sub-keys; reads fan out over them
+        //  <WriteSkewedItems>
+        SkewAwarePartitioner partitioner = new SkewAwarePartitioner(container,
+                Arrays.asList("/tenantId", "/userId", "/sessionId"), 4, 50, 1, Duration.ofSeconds(1));
+
+        List<UserSession> userSessions = UserSessionData.buildSkewedSampleSessionData();
+        Flux.fromIterable(userSessions)
+                .concatMap(partitioner::createItem)
+                .blockLast();
+        logger.info("Hot prefixes: " + partitioner.getHotPrefixes());
+
+        Long tenantSessions = partitioner
+                .readAllItems(Collections.singletonList("Microsoft"), UserSession.class)
+                .count()
+                .block();
+        logger.info("Tenant Microsoft has " + tenantSessions + " session(s) over "
+                + partitioner.physicalPrefixes(Collections.singletonList("Microsoft")).size() + " prefix(es)");
+
+        //  A session of the hot tenant written late, most likely under a sub-key
+        UserSession hotSession = userSessions.get(150);
+        UserSession read = partitioner.readItem(hotSession.getId(),
+                Arrays.asList(hotSession.getTenantId(), hotSession.getUserId(), hotSession.getSessionId()),
+                UserSession.class).block();
+        logger.info("Item successfully read with id " + read.getId() + " for tenant " + read.getTenantId());
+        //  </WriteSkewedItems>
+    }
+
     private void deleteItem(UserSession item) {
-        container.deleteItem(item.getId(), new PartitionKeyBuilder().add(item.getTenantId()).add(item.getUserId()).add(item.getSessionId()).build()).block();
+        container.deleteItem(item.getId(), partitionKeyCache.get(item.getTenantId(), item.getUserId(), item.getSessionId())).block();
     }
 
     private void shutdown() {
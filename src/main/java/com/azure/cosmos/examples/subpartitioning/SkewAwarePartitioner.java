@@ -0,0 +1,313 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package com.azure.cosmos.examples.subpartitioning;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.PartitionKeyBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spreads the writes of hot partition key prefixes of a hierarchically partitioned container over synthetic
+ * sub-keys, and fans reads out over them.
+ * <p>
+ * The request charge and the throttled requests of every write are recorded per prefix: per first component (for
+ * example the tenant) and per first two components (tenant and user). A prefix whose rate exceeds the configured
+ * RU/s or 429/s within a measurement window becomes hot. New writes under a hot prefix get a suffix "#n" appended to
+ * the last component of the prefix, with n derived from the hash of the next component: a hot tenant's users are
+ * spread over n tenant sub-keys, and hence over the physical partitions, while all items of one user stay together.
+ * The logical key is kept in the document ({@value #LOGICAL_KEY_PROPERTY}) and restored on reads. Items already
+ * written under an earlier key stay there; an upsert moves an item from every key it may have been written under
+ * earlier.
+ * <p>
+ * Point reads try the current physical key first and then the keys used before its prefixes became hot; prefix
+ * reads cover every sub-key and the plain key. A prefix stays hot once detected, so keys remain stable; instances
+ * sharing a container should share the hot prefixes ({@link #getHotPrefixes()}, {@link #markHot}) so they write and
+ * read the same sub-keys. Partition key components must be strings.
+ */
+public class SkewAwarePartitioner {
+    private static final Logger logger = LoggerFactory.getLogger(SkewAwarePartitioner.class);
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+
+    public static final String LOGICAL_KEY_PROPERTY = "logicalPartitionKey";
+    private static final String SUFFIX_SEPARATOR = "#";
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int NOT_FOUND = 404;
+
+    private final CosmosAsyncContainer container;
+    private final List<String> keyProperties;
+    private final int suffixes;
+    private final double hotRequestUnitsPerSecond;
+    private final double hotThrottlesPerSecond;
+    private final Duration window;
+    private final PartitionKeyPrefixRouter router;
+
+    private final Set<List<String>> hotPrefixes = ConcurrentHashMap.newKeySet();
+    private final Map<List<String>, Load> loads = new ConcurrentHashMap<>();
+
+    /**
+     * @param partitionKeyPaths partition key paths of the container, top level properties such as "/tenantId"
+     * @param suffixes sub-keys a hot prefix is spread over
+     * @param hotRequestUnitsPerSecond write RU/s above which a prefix is hot
+     * @param hotThrottlesPerSecond throttled writes per second above which a prefix is hot
+     * @param window measurement window for the rates
+     */
+    public SkewAwarePartitioner(
+        CosmosAsyncContainer container,
+        List<String> partitionKeyPaths,
+        int suffixes,
+        double hotRequestUnitsPerSecond,
+        double hotThrottlesPerSecond,
+        Duration window) {
+
+        if (partitionKeyPaths.size() < 2) {
+            throw new IllegalArgumentException("A hierarchical partition key with at least two levels is required.");
+        }
+        this.container = container;
+        this.keyProperties = new ArrayList<>();
+        for (String path : partitionKeyPaths) {
+            if (path.lastIndexOf('/') != 0) {
+                throw new IllegalArgumentException("Partition key paths must be top level properties: " + path);
+            }
+            keyProperties.add(path.substring(1));
+        }
+        this.suffixes = suffixes;
+        this.hotRequestUnitsPerSecond = hotRequestUnitsPerSecond;
+        this.hotThrottlesPerSecond = hotThrottlesPerSecond;
+        this.window = window;
+        this.router = new PartitionKeyPrefixRouter(container, suffixes + 1);
+    }
+
+    /**
+     * Creates a new item under its physical key, recording the load on its prefixes.
+     */
+    public <T> Mono<CosmosItemResponse<ObjectNode>> createItem(T item) {
+        return write(item, false);
+    }
+
+    /**
+     * Upserts an item under its physical key. When that is a sub-key, copies of the item written under the keys used
+     * before its prefixes became hot (the plain key, and the sub-key of a hot tenant before its user became hot as
+     * well) are deleted, which costs an additional request per earlier key for every upsert under a hot prefix;
+     * prefer {@link #createItem} for new items.
+     */
+    public <T> Mono<CosmosItemResponse<ObjectNode>> upsertItem(T item) {
+        return write(item, true);
+    }
+
+    private <T> Mono<CosmosItemResponse<ObjectNode>> write(T item, boolean upsert) {
+        return Mono.defer(() -> {
+            ObjectNode document = OBJECT_MAPPER.valueToTree(item);
+            List<String> logicalKey = new ArrayList<>(keyProperties.size());
+            for (String property : keyProperties) {
+                logicalKey.add(document.path(property).asText());
+            }
+            List<String> physicalKey = physicalKey(logicalKey);
+
+            ArrayNode logicalKeyNode = document.putArray(LOGICAL_KEY_PROPERTY);
+            for (int i = 0; i < keyProperties.size(); i++) {
+                logicalKeyNode.add(logicalKey.get(i));
+                document.put(keyProperties.get(i), physicalKey.get(i));
+            }
+
+            // <RecordedWrite>
+            PartitionKey partitionKey = toPartitionKey(physicalKey);
+            Mono<CosmosItemResponse<ObjectNode>> write = upsert
+                ? container.upsertItem(document, partitionKey, new CosmosItemRequestOptions())
+                : container.createItem(document, partitionKey, new CosmosItemRequestOptions());
+            write = write
+                .doOnNext(response -> record(logicalKey, response.getRequestCharge(), false))
+                .doOnError(CosmosException.class, e -> record(logicalKey, e.getRequestCharge(), e.getStatusCode() == TOO_MANY_REQUESTS));
+            // </RecordedWrite>
+
+            if (!upsert || physicalKey.equals(logicalKey)) {
+                return write;
+            }
+            // Every key the item may have been written under before, except the one just written; the last component
+            // is never suffixed, so keys that suffix it cannot hold the item
+            List<List<String>> earlierKeys = new ArrayList<>();
+            String lastComponent = logicalKey.get(logicalKey.size() - 1);
+            for (List<String> key : physicalPrefixes(logicalKey)) {
+                if (!key.equals(physicalKey) && key.get(key.size() - 1).equals(lastComponent)) {
+                    earlierKeys.add(key);
+                }
+            }
+            return write.flatMap(response -> Flux.fromIterable(earlierKeys)
+                .flatMap(key -> container
+                    .deleteItem(document.path("id").asText(), toPartitionKey(key))
+                    .onErrorResume(CosmosException.class, e -> e.getStatusCode() == NOT_FOUND ? Mono.empty() : Mono.error(e)))
+                .then(Mono.just(response)));
+        });
+    }
+
+    /**
+     * Reads an item by its logical key, completing empty when it does not exist.
+     */
+    public <T> Mono<T> readItem(String id, List<String> logicalKey, Class<T> itemType) {
+        // The current physical key first, then the keys the item may have been written under earlier
+        List<List<String>> candidates = physicalPrefixes(logicalKey);
+        Collections.reverse(candidates);
+
+        return Flux.fromIterable(candidates)
+            .concatMap(key -> container
+                .readItem(id, toPartitionKey(key), JsonNode.class)
+                .map(response -> toItem(response.getItem(), itemType))
+                .onErrorResume(CosmosException.class, e -> e.getStatusCode() == NOT_FOUND ? Mono.empty() : Mono.error(e)))
+            .next();
+    }
+
+    /**
+     * Reads all items under a logical prefix, such as (tenant) or (tenant, user), across its sub-keys.
+     */
+    public <T> Flux<T> readAllItems(List<String> logicalPrefix, Class<T> itemType) {
+        return Flux.fromIterable(physicalPrefixes(logicalPrefix))
+            .flatMap(prefix -> router.readAllItems(toPartitionKey(prefix), JsonNode.class))
+            .map(document -> toItem(document, itemType));
+    }
+
+    /**
+     * Physical prefixes holding the items of a logical prefix: the plain prefix, plus its sub-keys where it or one
+     * of its own prefixes is hot.
+     */
+    public List<List<String>> physicalPrefixes(List<String> logicalPrefix) {
+        List<List<String>> prefixes = new ArrayList<>();
+        prefixes.add(new ArrayList<>(logicalPrefix));
+        for (int level = 0; level < logicalPrefix.size(); level++) {
+            if (!hotPrefixes.contains(logicalPrefix.subList(0, level + 1))) {
+                continue;
+            }
+            List<List<String>> expanded = new ArrayList<>();
+            for (List<String> prefix : prefixes) {
+                if (level + 1 < logicalPrefix.size()) {
+                    // The next component is known, so it selects exactly one sub-key
+                    List<String> suffixed = new ArrayList<>(prefix);
+                    suffixed.set(level, prefix.get(level) + SUFFIX_SEPARATOR + bucket(logicalPrefix.get(level + 1)));
+                    expanded.add(suffixed);
+                } else {
+                    for (int bucket = 0; bucket < suffixes; bucket++) {
+                        List<String> suffixed = new ArrayList<>(prefix);
+                        suffixed.set(level, prefix.get(level) + SUFFIX_SEPARATOR + bucket);
+                        expanded.add(suffixed);
+                    }
+                }
+            }
+            prefixes.addAll(expanded);
+        }
+        return prefixes;
+    }
+
+    public Set<List<String>> getHotPrefixes() {
+        return Collections.unmodifiableSet(hotPrefixes);
+    }
+
+    /**
+     * Marks a prefix as hot, for example one detected by another instance.
+     */
+    public void markHot(List<String> logicalPrefix) {
+        if (hotPrefixes.add(new ArrayList<>(logicalPrefix))) {
+            logger.info("Prefix {} is hot, new writes are spread over {} sub-keys", logicalPrefix, suffixes);
+        }
+    }
+
+    private List<String> physicalKey(List<String> logicalKey) {
+        List<String> physicalKey = new ArrayList<>(logicalKey);
+        // Only prefixes are suffixed; the last component always identifies the item
+        for (int level = 0; level < logicalKey.size() - 1; level++) {
+            if (hotPrefixes.contains(logicalKey.subList(0, level + 1))) {
+                physicalKey.set(level, physicalKey.get(level) + SUFFIX_SEPARATOR + bucket(logicalKey.get(level + 1)));
+            }
+        }
+        return physicalKey;
+    }
+
+    private int bucket(String nextComponent) {
+        return Math.floorMod(nextComponent.hashCode(), suffixes);
+    }
+
+    private void record(List<String> logicalKey, double requestCharge, boolean throttled) {
+        for (int level = 1; level < logicalKey.size(); level++) {
+            List<String> prefix = new ArrayList<>(logicalKey.subList(0, level));
+            if (hotPrefixes.contains(prefix)) {
+                continue;
+            }
+            Load load = loads.computeIfAbsent(prefix, p -> new Load());
+            if (load.add(requestCharge, throttled, window, hotRequestUnitsPerSecond, hotThrottlesPerSecond)) {
+                loads.remove(prefix);
+                markHot(prefix);
+            }
+        }
+    }
+
+    private PartitionKey toPartitionKey(List<String> key) {
+        PartitionKeyBuilder builder = new PartitionKeyBuilder();
+        for (String component : key) {
+            builder.add(component);
+        }
+        return builder.build();
+    }
+
+    private <T> T toItem(JsonNode document, Class<T> itemType) {
+        ObjectNode item = document.deepCopy();
+        JsonNode logicalKey = item.remove(LOGICAL_KEY_PROPERTY);
+        if (logicalKey != null) {
+            for (int i = 0; i < keyProperties.size(); i++) {
+                item.set(keyProperties.get(i), logicalKey.get(i));
+            }
+        }
+        try {
+            return OBJECT_MAPPER.treeToValue(item, itemType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Item cannot be read as " + itemType.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Load of one prefix within the current measurement window.
+     */
+    private static final class Load {
+        private long windowStart = System.nanoTime();
+        private double requestUnits;
+        private long throttles;
+
+        /**
+         * @return true when the window that just ended exceeded one of the thresholds
+         */
+        private synchronized boolean add(double requestCharge, boolean throttled, Duration window,
+                                         double hotRequestUnitsPerSecond, double hotThrottlesPerSecond) {
+            requestUnits += requestCharge;
+            throttles += throttled ? 1 : 0;
+
+            long now = System.nanoTime();
+            double seconds = (now - windowStart) / 1e9;
+            if (seconds < window.toNanos() / 1e9) {
+                return false;
+            }
+            boolean hot = requestUnits / seconds >= hotRequestUnitsPerSecond || throttles / seconds >= hotThrottlesPerSecond;
+            windowStart = now;
+            requestUnits = 0;
+            throttles = 0;
+            return hot;
+        }
+    }
+}